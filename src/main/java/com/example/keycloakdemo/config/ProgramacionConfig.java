@@ -0,0 +1,16 @@
+package com.example.keycloakdemo.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Tareas @Scheduled (volcados, compactaciones, sondeos...). Con
+ * programacion.habilitada=false no se registra ninguna; los tests que cuentan
+ * sentencias SQL lo usan para que no se cuelen las de los trabajos de fondo.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "programacion.habilitada", havingValue = "true", matchIfMissing = true)
+public class ProgramacionConfig {
+}
@@ -0,0 +1,53 @@
+package com.example.keycloakdemo.config;
+
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pedido y PedidoItem usaban IDENTITY; con ddl-auto=update Hibernate crea
+ * pedidos_seq y pedido_item_seq empezando en 1 aunque las tablas ya tengan filas.
+ * Al arrancar, antes de que el servidor acepte peticiones, cada secuencia se
+ * adelanta por encima del mayor ID existente (contando también el archivo).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SecuenciasPedidosConfig {
+
+    // Igual que el allocationSize de las entidades
+    private static final int INCREMENTO = 50;
+
+    // Depende de EntityManagerFactory para ejecutarse después de que Hibernate cree las secuencias
+    private final EntityManagerFactory entityManagerFactory;
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void ajustar() {
+        Dialect dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        ajustar(dialect, "pedidos_seq", "pedidos", "pedidos_archivo");
+        ajustar(dialect, "pedido_item_seq", "pedido_item", "pedido_item_archivo");
+    }
+
+    private void ajustar(Dialect dialect, String secuencia, String tabla, String tablaArchivo) {
+        Long maximo = jdbcTemplate.queryForObject("SELECT GREATEST("
+                + "(SELECT COALESCE(MAX(id), 0) FROM " + tabla + "), "
+                + "(SELECT COALESCE(MAX(id), 0) FROM " + tablaArchivo + "))", Long.class);
+        // Consume un bloque de IDs; sólo se pierde si la secuencia ya estaba bien.
+        // El optimizador pooled reparte [valor - INCREMENTO + 1, valor]: el primero debe quedar por encima de maximo
+        Long siguiente = jdbcTemplate.queryForObject(
+                dialect.getSequenceSupport().getSequenceNextValString(secuencia), Long.class);
+        if (siguiente - INCREMENTO >= maximo) {
+            return;
+        }
+        long reinicio = maximo + INCREMENTO + 1;
+        jdbcTemplate.execute("ALTER SEQUENCE " + secuencia + " RESTART WITH " + reinicio);
+        log.warn("Secuencia {} adelantada a {} (MAX(id) de {} = {})", secuencia, reinicio, tabla, maximo);
+    }
+}
@@ -1,7 +1,6 @@
 package com.example.keycloakdemo.controller;
 
-import java.util.List;
-
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -11,12 +10,18 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.keycloakdemo.dto.CategoriaRequestDTO;
 import com.example.keycloakdemo.dto.CategoriaResponseDTO;
+import com.example.keycloakdemo.dto.PaginaDTO;
+import com.example.keycloakdemo.dto.ReconstruccionResumenesDTO;
+import com.example.keycloakdemo.dto.ResumenCategoriaDTO;
 import com.example.keycloakdemo.service.CategoriaService;
+import com.example.keycloakdemo.service.ResumenCategoriaService;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -32,6 +37,7 @@ import lombok.RequiredArgsConstructor;
 public class CategoriaController {
 
     private final CategoriaService categoriaService;
+    private final ResumenCategoriaService resumenCategoriaService;
 
     @PostMapping
     @PreAuthorize("hasRole('ADMIN')")
@@ -42,16 +48,61 @@ public class CategoriaController {
 
     @GetMapping
     @PreAuthorize("isAuthenticated()")
-    @Operation(summary = "Listar Categorías", description = "Cualquiera autenticado")
-    public ResponseEntity<List<CategoriaResponseDTO>> obtenerTodasCategorias() {
-        return ResponseEntity.ok(categoriaService.obtenerTodas());
+    @Operation(summary = "Listar Categorías", description = "Cualquiera autenticado. Paginado por cursor: limit (máx. 100) y after. "
+            + "Con incluirProductos=true añade los primeros productos de cada categoría y su número total.")
+    public ResponseEntity<PaginaDTO<CategoriaResponseDTO>> obtenerTodasCategorias(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean incluirProductos) {
+        return Paginacion.responder(categoriaService.obtenerPagina(Paginacion.limite(limit), after, incluirProductos));
+    }
+
+    @GetMapping("/resumenes")
+    @PreAuthorize("isAuthenticated()")
+    @Operation(summary = "Listar resúmenes de categoría",
+               description = "Cualquiera autenticado. Número de productos, precio mínimo y máximo y stock total de cada "
+                       + "categoría, sin recorrer sus productos. Paginado por cursor: limit (máx. 100) y after.")
+    public ResponseEntity<PaginaDTO<ResumenCategoriaDTO>> obtenerResumenes(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after) {
+        return Paginacion.responder(resumenCategoriaService.obtenerPagina(Paginacion.limite(limit), after));
+    }
+
+    @PostMapping("/resumenes/reconstruir")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Reconstruir resúmenes de categoría",
+               description = "Solo ADMIN. Recalcula los resúmenes desde los productos y corrige los desviados.")
+    public ResponseEntity<ReconstruccionResumenesDTO> reconstruirResumenes() {
+        return ResponseEntity.ok(resumenCategoriaService.reconstruir());
+    }
+
+    @GetMapping("/{id}/resumen")
+    @PreAuthorize("isAuthenticated()")
+    @Operation(summary = "Obtener resumen de categoría", description = "Cualquiera autenticado.")
+    public ResponseEntity<ResumenCategoriaDTO> obtenerResumen(@PathVariable Long id) {
+        return ResponseEntity.ok(resumenCategoriaService.obtener(id));
     }
 
     @GetMapping("/{id}")
     @PreAuthorize("isAuthenticated()")
-    @Operation(summary = "Obtener categoría", description = "Cualquiera autenticado")
-    public ResponseEntity<CategoriaResponseDTO> obtenerCategoria(@PathVariable Long id) {
-        return ResponseEntity.ok(categoriaService.obtenerPorId(id));
+    @Operation(summary = "Obtener categoría",
+               description = "Cualquiera autenticado. Sin incluirProductos devuelve ETag y responde 304 a If-None-Match.")
+    public ResponseEntity<CategoriaResponseDTO> obtenerCategoria(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "false") boolean incluirProductos,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // con productos la respuesta depende también de ellos: la versión de la categoría no basta
+        if (incluirProductos) {
+            return ResponseEntity.ok(categoriaService.obtenerPorId(id, true));
+        }
+        if (ifNoneMatch != null) {
+            long version = categoriaService.obtenerVersion(id);
+            if (Versiones.coincide(ifNoneMatch, version)) {
+                return Versiones.sinCambios(version);
+            }
+        }
+        CategoriaResponseDTO categoria = categoriaService.obtenerPorId(id, false);
+        return Versiones.responder(categoria, categoria.getVersion());
     }
 
     @PutMapping("/{id}")
@@ -1,6 +1,5 @@
 package com.example.keycloakdemo.controller;
 
-import java.util.List;
 import java.util.Map;
 
 import org.springframework.http.HttpStatus;
@@ -13,10 +12,12 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.keycloakdemo.dto.ClienteRequestDTO;
 import com.example.keycloakdemo.dto.ClienteResponseDTO;
+import com.example.keycloakdemo.dto.PaginaDTO;
 import com.example.keycloakdemo.service.ClienteService;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -46,9 +47,13 @@ public class ClienteController {
     // ADMIN PUEDE VER TODOS LOS CLIENTES
     @GetMapping
     @PreAuthorize("hasAnyRole('ADMIN', 'CLIENTE')")
-    @Operation(summary = "Listar todos los clientes", description = "Devuelve la lista completa de clientes registrados")
-    public ResponseEntity<List<ClienteResponseDTO>> listarClientes() {
-        return ResponseEntity.ok(clienteService.obtenerTodos());
+    @Operation(summary = "Listar clientes",
+               description = "Devuelve los clientes registrados por páginas de como mucho 100 (limit). "
+                       + "La página siguiente se pide con el cursor after de la respuesta.")
+    public ResponseEntity<PaginaDTO<ClienteResponseDTO>> listarClientes(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after) {
+        return Paginacion.responder(clienteService.obtenerPagina(Paginacion.limite(limit), after));
     }
 
     // CLIENTE PUEDE VER SU PROPIO PERFIL. ADMIN PUEDE VER TODOS
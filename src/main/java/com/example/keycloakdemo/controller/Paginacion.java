@@ -0,0 +1,41 @@
+package com.example.keycloakdemo.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.example.keycloakdemo.dto.PaginaDTO;
+
+// Límite de página común a los listados y enlace a la página siguiente
+final class Paginacion {
+
+    static final int LIMITE_POR_DEFECTO = 20;
+    static final int LIMITE_MAXIMO = 100;
+
+    private Paginacion() {
+    }
+
+    static int limite(Integer solicitado) {
+        if (solicitado == null) {
+            return LIMITE_POR_DEFECTO;
+        }
+        if (solicitado < 1) {
+            throw new IllegalArgumentException("El parámetro limit debe ser mayor que 0");
+        }
+        return Math.min(solicitado, LIMITE_MAXIMO);
+    }
+
+    static <P extends PaginaDTO<?>> ResponseEntity<P> responder(P pagina) {
+        if (pagina.getSiguienteCursor() == null) {
+            return ResponseEntity.ok(pagina);
+        }
+        String siguiente = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("limit", pagina.getLimite())
+                .replaceQueryParam("after", pagina.getSiguienteCursor())
+                .toUriString();
+        pagina.setSiguiente(siguiente);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.LINK, "<" + siguiente + ">; rel=\"next\"")
+                .body(pagina);
+    }
+}
@@ -1,9 +1,16 @@
 package com.example.keycloakdemo.controller;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -12,17 +19,34 @@ import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.example.keycloakdemo.dto.CancelacionLoteRequestDTO;
+import com.example.keycloakdemo.dto.PaginaDTO;
+import com.example.keycloakdemo.dto.PedidoLoteRequestDTO;
+import com.example.keycloakdemo.dto.PedidoLoteResultadoDTO;
 import com.example.keycloakdemo.dto.PedidoRequestDTO;
 import com.example.keycloakdemo.dto.PedidoResponseDTO;
+import com.example.keycloakdemo.dto.SolicitudPedidoResponseDTO;
+import com.example.keycloakdemo.dto.TransicionLoteRequestDTO;
+import com.example.keycloakdemo.dto.TransicionLoteResponseDTO;
 import com.example.keycloakdemo.model.EstadoPedido;
+import com.example.keycloakdemo.service.IdempotenciaService;
+import com.example.keycloakdemo.service.PedidoAsyncService;
+import com.example.keycloakdemo.service.PedidoEventosService;
+import com.example.keycloakdemo.service.PedidoExportService;
 import com.example.keycloakdemo.service.PedidoService;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 
@@ -34,53 +58,186 @@ import lombok.RequiredArgsConstructor;
 public class PedidoController {
 
     private final PedidoService pedidoService;
+    private final PedidoAsyncService pedidoAsyncService;
+    private final IdempotenciaService idempotenciaService;
+    private final PedidoEventosService pedidoEventosService;
+    private final PedidoExportService pedidoExportService;
+
+    // Sólo la exportación puede durar tanto; el resto de peticiones asíncronas mantiene el timeout por defecto
+    @Value("${pedidos.export.timeout-ms:3600000}")
+    private long exportTimeoutMs;
 
     // CLIENTE puede crear sus propios pedidos
     @PostMapping
     @PreAuthorize("hasAnyRole('ADMIN', 'CLIENTE')")
     @Operation(summary = "Crear nuevo pedido", 
-               description = "Crea un pedido con sus items. Verifica stock y calcula total automáticamente.")
-    public ResponseEntity<PedidoResponseDTO> crearPedido(@Valid @RequestBody PedidoRequestDTO request) {
+               description = "Crea un pedido con sus items. Verifica stock y calcula total automáticamente. "
+                       + "Con la cabecera Idempotency-Key los reintentos devuelven el pedido ya creado.")
+    public ResponseEntity<PedidoResponseDTO> crearPedido(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @Valid @RequestBody PedidoRequestDTO request) {
+
+        if (idempotencyKey == null) {
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .body(pedidoService.crear(request));
+        }
+
+        IdempotenciaService.Resultado resultado = idempotenciaService.crear(idempotencyKey, request);
         return ResponseEntity.status(HttpStatus.CREATED)
-                .body(pedidoService.crear(request));
+                .header("Idempotent-Replayed", String.valueOf(resultado.repetido()))
+                .body(resultado.pedido());
+    }
+
+    // Integraciones (marketplaces) envían cientos de pedidos en una sola petición
+    @PostMapping("/batch")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Crear pedidos en lote",
+               description = "Crea varios pedidos en una transacción. Devuelve el resultado de cada pedido; "
+                       + "un pedido rechazado no impide crear los demás.")
+    public ResponseEntity<List<PedidoLoteResultadoDTO>> crearPedidosLote(
+            @Valid @RequestBody PedidoLoteRequestDTO request) {
+        return ResponseEntity.ok(pedidoService.crearLote(request.getPedidos()));
+    }
+
+    // Modo asíncrono: responde 202 con un ID de seguimiento sin esperar a la base de datos
+    @PostMapping("/solicitudes")
+    @PreAuthorize("hasAnyRole('ADMIN', 'CLIENTE')")
+    @Operation(summary = "Solicitar pedido de forma asíncrona",
+               description = "Valida y encola el pedido. Devuelve 202 con el ID de seguimiento; "
+                       + "el resultado se consulta en GET /api/pedidos/solicitudes/{id}.")
+    public ResponseEntity<SolicitudPedidoResponseDTO> solicitarPedido(@Valid @RequestBody PedidoRequestDTO request) {
+        SolicitudPedidoResponseDTO solicitud = pedidoAsyncService.encolar(request);
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentRequest()
+                        .path("/{id}")
+                        .buildAndExpand(solicitud.getId())
+                        .toUri())
+                .body(solicitud);
+    }
+
+    @GetMapping("/solicitudes/{id}")
+    @PreAuthorize("hasAnyRole('ADMIN', 'CLIENTE')")
+    @Operation(summary = "Consultar solicitud de pedido asíncrona")
+    public ResponseEntity<SolicitudPedidoResponseDTO> obtenerSolicitud(@PathVariable String id) {
+        return ResponseEntity.ok(pedidoAsyncService.obtener(id));
     }
 
     // ADMIN puede ver todos los pedidos, CLIENTE solo sus propios pedidos
     @GetMapping
     @PreAuthorize("hasRole('ADMIN')")
-    @Operation(summary = "Listar todos los pedidos", description = "Solo accesible por ADMIN")
-    public ResponseEntity<List<PedidoResponseDTO>> listarTodos() {
-        return ResponseEntity.ok(pedidoService.listarTodos());
+    @Operation(summary = "Listar todos los pedidos",
+               description = "Solo accesible por ADMIN. Paginado por cursor: limit (máx. 100) y after. "
+                       + "Con incluirArchivados=true sigue por los pedidos archivados. "
+                       + "Con fields (p.ej. id,estado,total) sólo se leen y devuelven esos campos.")
+    public ResponseEntity<? extends PaginaDTO<?>> listarTodos(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "false") boolean incluirArchivados,
+            @RequestParam(required = false) String fields) {
+        if (fields != null) {
+            if (incluirArchivados) {
+                throw new IllegalArgumentException("fields no se puede combinar con incluirArchivados=true");
+            }
+            return Paginacion.responder(pedidoService.listarPaginaCampos(Paginacion.limite(limit), after, fields));
+        }
+        return Paginacion.responder(pedidoService.listarPagina(Paginacion.limite(limit), after, incluirArchivados));
+    }
+
+    // Finanzas descarga todos los pedidos: se escriben según se leen, sin cargarlos en memoria
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Exportar pedidos en NDJSON o CSV",
+               description = "Descarga en streaming los pedidos filtrados por estado y por fecha (desde incluida, "
+                       + "hasta excluida), incluidos los archivados. NDJSON: un pedido con sus items por línea. "
+                       + "CSV: una fila por item, o una con las columnas de item vacías si el pedido no tiene.")
+    public WebAsyncTask<Void> exportar(
+            @RequestParam(defaultValue = "NDJSON") PedidoExportService.Formato formato,
+            @RequestParam(required = false) EstadoPedido estado,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hasta,
+            HttpServletResponse response) {
+
+        boolean csv = formato == PedidoExportService.Formato.CSV;
+        response.setContentType((csv ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                : MediaType.APPLICATION_NDJSON).toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"pedidos." + (csv ? "csv" : "ndjson") + "\"");
+        // WebAsyncTask en vez de StreamingResponseBody para llevar su propio timeout
+        return new WebAsyncTask<>(exportTimeoutMs, () -> {
+            pedidoExportService.exportar(formato, estado, desde, hasta, response.getOutputStream());
+            return null;
+        });
     }
 
     @GetMapping("/cliente/{clienteId}")
     @PreAuthorize("hasAnyRole('ADMIN', 'CLIENTE')")
     @Operation(summary = "Listar pedidos de un cliente específico")
-    public ResponseEntity<List<PedidoResponseDTO>> listarPorCliente(@PathVariable Long clienteId) {
-        return ResponseEntity.ok(pedidoService.listarPorCliente(clienteId));
+    public ResponseEntity<List<PedidoResponseDTO>> listarPorCliente(
+            @PathVariable Long clienteId,
+            @RequestParam(defaultValue = "false") boolean incluirArchivados) {
+        return ResponseEntity.ok(pedidoService.listarPorCliente(clienteId, incluirArchivados));
+    }
+
+    // Sustituye al sondeo de /cliente/{clienteId}: sólo llegan los cambios
+    @GetMapping(value = "/cliente/{clienteId}/eventos", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN', 'CLIENTE')")
+    @Operation(summary = "Suscribirse a los cambios de pedidos de un cliente (SSE)",
+               description = "Envía un evento 'pedido' cada vez que se crea o cambia de estado un pedido del cliente. "
+                       + "Al reconectar con Last-Event-ID se reenvían los eventos recientes perdidos; si ya no se "
+                       + "puede (reinicio del servidor o Last-Event-ID demasiado antiguo) llega un evento 'reinicio' "
+                       + "y hay que volver a leer los pedidos. Un suscriptor que no consume a tiempo se desconecta.")
+    public SseEmitter suscribirEventos(
+            @PathVariable Long clienteId,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long ultimoEventoId) {
+        return pedidoEventosService.suscribir(clienteId, ultimoEventoId);
     }
 
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN', 'CLIENTE')")
-    @Operation(summary = "Obtener pedido por ID")
-    public ResponseEntity<PedidoResponseDTO> obtenerPedido(@PathVariable Long id) {
-        return ResponseEntity.ok(pedidoService.obtenerPorId(id));
+    @Operation(summary = "Obtener pedido por ID",
+               description = "Devuelve ETag; con If-None-Match responde 304 si el pedido no ha cambiado.")
+    public ResponseEntity<PedidoResponseDTO> obtenerPedido(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "false") boolean incluirArchivados,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            Optional<Long> version = pedidoService.buscarVersion(id);
+            if (version.isPresent() && Versiones.coincide(ifNoneMatch, version.get())) {
+                return Versiones.sinCambios(version.get());
+            }
+        }
+        PedidoResponseDTO pedido = pedidoService.obtenerPorId(id, incluirArchivados);
+        return Versiones.responder(pedido, pedido.getVersion());
     }
 
     // Solo ADMIN puede actualizar estado de pedidos
     @PatchMapping("/{id}/estado")
     @PreAuthorize("hasRole('ADMIN')")
-    @Operation(summary = "Actualizar estado del pedido", description = "Solo ADMIN puede cambiar estados")
+    @Operation(summary = "Actualizar estado del pedido",
+               description = "Solo ADMIN puede cambiar estados. Con If-Match responde 412 si el pedido cambió desde ese ETag.")
     public ResponseEntity<PedidoResponseDTO> actualizarEstado(
             @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @RequestBody Map<String, String> body) {
         
         String estadoStr = body.get("estado");
         EstadoPedido nuevoEstado = EstadoPedido.valueOf(estadoStr.toUpperCase());
         
-        return ResponseEntity.ok(pedidoService.actualizarEstado(id, nuevoEstado));
+        PedidoResponseDTO pedido = pedidoService.actualizarEstado(id, nuevoEstado, Versiones.versionEsperada(ifMatch));
+        return Versiones.responder(pedido, pedido.getVersion());
     }
     
+    // El almacén marca miles de pedidos de golpe (p.ej. ENVIADO al final del día)
+    @PatchMapping("/estado")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Actualizar estado de varios pedidos",
+               description = "Aplica la transición a los pedidos cuyo estado actual la permite y "
+                       + "devuelve los IDs rechazados. Solo ADMIN.")
+    public ResponseEntity<TransicionLoteResponseDTO> actualizarEstadoPedidos(
+            @Valid @RequestBody TransicionLoteRequestDTO request) {
+        return ResponseEntity.ok(pedidoService.actualizarEstadoVarios(request.getIds(), request.getEstado()));
+    }
+
     @DeleteMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN', 'CLIENTE')")
     @Operation(summary = "Cancelar pedido", 
@@ -88,5 +245,15 @@ public class PedidoController {
     public ResponseEntity<Void> cancelarPedido(@PathVariable Long id) {
         pedidoService.cancelar(id);
         return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/cancelaciones")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Cancelar varios pedidos",
+               description = "Cancela todos los pedidos indicados en una transacción, o ninguno si alguno "
+                       + "no existe o ya no es cancelable. Devuelve el stock de todos.")
+    public ResponseEntity<Void> cancelarPedidos(@Valid @RequestBody CancelacionLoteRequestDTO request) {
+        pedidoService.cancelarVarios(request.getIds());
+        return ResponseEntity.noContent().build();
     }    
 }
@@ -1,7 +1,9 @@
 package com.example.keycloakdemo.controller;
 
+import java.math.BigDecimal;
 import java.util.List;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -10,11 +12,15 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.example.keycloakdemo.dto.PaginaDTO;
 import com.example.keycloakdemo.dto.ProductoRequestDTO;
 import com.example.keycloakdemo.dto.ProductoResponseDTO;
+import com.example.keycloakdemo.dto.ProductosFiltradosDTO;
 import com.example.keycloakdemo.service.ProductoService;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -44,24 +50,76 @@ public class ProductoController {
     // Todos los usuarios autenticados pueden ver productos
     @GetMapping
     @PreAuthorize("isAuthenticated()")
-    @Operation(summary = "Listar todos los productos", description = "Accesible por autenticados")
-    public ResponseEntity<List<ProductoResponseDTO>> obtenerTodosProductos() {
-        return ResponseEntity.ok(productoService.obtenerTodos());
+    @Operation(summary = "Listar productos",
+               description = "Accesible por autenticados. Paginado por cursor: limit (máx. 100) y after. "
+                       + "Con fields (p.ej. id,nombre,precio) sólo se leen y devuelven esos campos.")
+    public ResponseEntity<? extends PaginaDTO<?>> obtenerTodosProductos(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String fields) {
+        if (fields != null) {
+            return Paginacion.responder(productoService.obtenerPaginaCampos(Paginacion.limite(limit), after, fields));
+        }
+        return Paginacion.responder(productoService.obtenerPagina(Paginacion.limite(limit), after));
+    }
+
+    @GetMapping("/buscar")
+    @PreAuthorize("isAuthenticated()")
+    @Operation(summary = "Buscar productos",
+               description = "Accesible por autenticados. Busca las palabras de q en nombre y descripción, sin "
+                       + "distinguir tildes; cada palabra puede ir a medias (autocompletado). Ordenado por relevancia, "
+                       + "limit máx. 100.")
+    public ResponseEntity<List<ProductoResponseDTO>> buscarProductos(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(productoService.buscar(q, Paginacion.limite(limit)));
+    }
+
+    @GetMapping("/filtro")
+    @PreAuthorize("isAuthenticated()")
+    @Operation(summary = "Filtrar productos",
+               description = "Accesible por autenticados. Filtros combinables: categoriaId, precioMin, precioMax, "
+                       + "enStock y nombre (mismas reglas que /buscar). Paginado por cursor; la primera página "
+                       + "incluye cuántos productos hay por categoría y por tramo de precio.")
+    public ResponseEntity<ProductosFiltradosDTO> filtrarProductos(
+            @RequestParam(required = false) Long categoriaId,
+            @RequestParam(required = false) BigDecimal precioMin,
+            @RequestParam(required = false) BigDecimal precioMax,
+            @RequestParam(defaultValue = "false") boolean enStock,
+            @RequestParam(required = false) String nombre,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after) {
+        return Paginacion.responder(productoService.filtrar(categoriaId, precioMin, precioMax, enStock, nombre,
+                Paginacion.limite(limit), after));
     }
 
     @GetMapping("/{id}")
     @PreAuthorize("isAuthenticated()")
-    @Operation(summary = "Obtener producto por ID", description = "Accesible por autenticados")
-    public ResponseEntity<ProductoResponseDTO> obtenerProducto(@PathVariable Long id) {
-        return ResponseEntity.ok(productoService.obtenerPorId(id));
+    @Operation(summary = "Obtener producto por ID",
+               description = "Accesible por autenticados. Devuelve ETag; con If-None-Match responde 304 si no ha cambiado.")
+    public ResponseEntity<ProductoResponseDTO> obtenerProducto(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            long version = productoService.obtenerVersion(id);
+            if (Versiones.coincide(ifNoneMatch, version)) {
+                return Versiones.sinCambios(version);
+            }
+        }
+        ProductoResponseDTO producto = productoService.obtenerPorId(id);
+        return Versiones.responder(producto, producto.getVersion());
     }
 
     @PutMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
-    @Operation(summary = "Modificar producto por ID", description = "Sólo accesible por ADMIN")
+    @Operation(summary = "Modificar producto por ID",
+               description = "Sólo accesible por ADMIN. Con If-Match responde 412 si el producto cambió desde ese ETag.")
     public ResponseEntity<ProductoResponseDTO> actualizarProducto(@PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @Valid @RequestBody ProductoRequestDTO producto) {
-        return ResponseEntity.ok(productoService.actualizarProducto(id, producto));
+        ProductoResponseDTO actualizado =
+                productoService.actualizarProducto(id, producto, Versiones.versionEsperada(ifMatch));
+        return Versiones.responder(actualizado, actualizado.getVersion());
     }
 
     @DeleteMapping("/{id}")
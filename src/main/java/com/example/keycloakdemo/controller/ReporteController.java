@@ -0,0 +1,108 @@
+package com.example.keycloakdemo.controller;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.keycloakdemo.dto.GastoClienteDTO;
+import com.example.keycloakdemo.dto.PedidosPorEstadoDTO;
+import com.example.keycloakdemo.dto.ReconstruccionVentasDTO;
+import com.example.keycloakdemo.dto.TramoPedidosDTO;
+import com.example.keycloakdemo.dto.VentaDiaDTO;
+import com.example.keycloakdemo.exception.ResourceNotFoundException;
+import com.example.keycloakdemo.service.AnaliticaPedidosService;
+import com.example.keycloakdemo.service.VentasService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+
+@RestController
+@RequestMapping("/api/reportes")
+@RequiredArgsConstructor
+@Tag(name = "Reportes", description = "Informes de ventas y analíticas de pedidos")
+@SecurityRequirement(name = "bearerAuth")
+public class ReporteController {
+
+    private final VentasService ventasService;
+    private final AnaliticaPedidosService analiticaPedidosService;
+
+    @GetMapping("/ventas")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Ventas por día",
+               description = "Solo ADMIN. Ingresos, unidades y número de pedidos por día y producto (o categoría) "
+                       + "entre desde y hasta, ambos incluidos; sin los pedidos cancelados. Se leen de los "
+                       + "resúmenes diarios, no de pedidos. Con id sólo ese producto o categoría.")
+    public ResponseEntity<List<VentaDiaDTO>> obtenerVentas(
+            @RequestParam(defaultValue = "PRODUCTO") VentasService.Agrupacion por,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(required = false) Long id) {
+        return ResponseEntity.ok(ventasService.obtenerVentas(por, desde, hasta, id));
+    }
+
+    @PostMapping("/ventas/reconstruir")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Reconstruir resúmenes de ventas",
+               description = "Solo ADMIN. Recalcula en segundo plano los resúmenes de desde a hasta a partir de los "
+                       + "pedidos, día a día. Responde 202; el avance se consulta en GET /api/reportes/ventas/reconstruccion.")
+    public ResponseEntity<ReconstruccionVentasDTO> reconstruirVentas(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        return ResponseEntity.accepted().body(ventasService.reconstruir(desde, hasta));
+    }
+
+    @GetMapping("/ventas/reconstruccion")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Consultar la última reconstrucción de ventas")
+    public ResponseEntity<ReconstruccionVentasDTO> obtenerReconstruccion() {
+        ReconstruccionVentasDTO reconstruccion = ventasService.obtenerReconstruccion();
+        if (reconstruccion == null) {
+            throw new ResourceNotFoundException("No se ha lanzado ninguna reconstrucción de ventas");
+        }
+        return ResponseEntity.ok(reconstruccion);
+    }
+
+    @GetMapping("/pedidos/estados")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Pedidos e ingresos por estado",
+               description = "Solo ADMIN. Incluye los pedidos archivados; desde y hasta (opcionales, incluidos) "
+                       + "filtran por día del pedido.")
+    public ResponseEntity<List<PedidosPorEstadoDTO>> obtenerPedidosPorEstado(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        return ResponseEntity.ok(analiticaPedidosService.porEstado(desde, hasta));
+    }
+
+    @GetMapping("/pedidos/unidades")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Histograma de unidades por pedido",
+               description = "Solo ADMIN. Sin pedidos cancelados. limites son los topes (incluidos) de cada "
+                       + "tramo; el último tramo recoge el resto.")
+    public ResponseEntity<List<TramoPedidosDTO>> obtenerHistogramaUnidades(
+            @RequestParam(defaultValue = "1,2,5,10,20,50") int[] limites,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        return ResponseEntity.ok(analiticaPedidosService.histogramaUnidades(limites, desde, hasta));
+    }
+
+    @GetMapping("/clientes/gasto")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Clientes que más han gastado",
+               description = "Solo ADMIN. Suma de los totales de sus pedidos no cancelados, de mayor a menor.")
+    public ResponseEntity<List<GastoClienteDTO>> obtenerClientesPorGasto(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        return ResponseEntity.ok(analiticaPedidosService.clientesPorGasto(Paginacion.limite(limit), desde, hasta));
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.keycloakdemo.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.example.keycloakdemo.exception.PreconditionFailedException;
+
+// ETag fuerte a partir de la columna @Version: "<version>"
+final class Versiones {
+
+    private Versiones() {
+    }
+
+    static String etag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    // If-None-Match admite una lista de ETags o *, con comparación débil
+    static boolean coincide(String ifNoneMatch, long version) {
+        String actual = etag(version);
+        for (String etiqueta : ifNoneMatch.split(",")) {
+            String valor = etiqueta.trim();
+            if (valor.startsWith("W/")) {
+                valor = valor.substring(2);
+            }
+            if (valor.equals("*") || valor.equals(actual)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Versión que exige If-Match (comparación fuerte), o null si no hay cabecera
+     * o es *. Un valor que no es un ETag nuestro nunca puede coincidir: 412.
+     */
+    static Long versionEsperada(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String valor = ifMatch.trim();
+        if (!valor.matches("\"\\d{1,18}\"")) {
+            throw new PreconditionFailedException("If-Match no corresponde a ninguna versión del recurso: " + ifMatch);
+        }
+        return Long.valueOf(valor.substring(1, valor.length() - 1));
+    }
+
+    static <T> ResponseEntity<T> responder(T cuerpo, Long version) {
+        if (version == null) {
+            return ResponseEntity.ok(cuerpo);
+        }
+        return ResponseEntity.ok().eTag(etag(version)).body(cuerpo);
+    }
+
+    static <T> ResponseEntity<T> sinCambios(long version) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag(version)).build();
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.keycloakdemo.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class CancelacionLoteRequestDTO {
+
+    @NotEmpty(message = "Debe indicar al menos un pedido")
+    @Size(max = 1000, message = "No se pueden cancelar más de 1000 pedidos a la vez")
+    private List<Long> ids;
+}
@@ -10,6 +10,9 @@ public class CategoriaResponseDTO {
     private String nombre;
     private String descripcion;
     
-    // Lista resumida de productos (sin categoría dentro para evitar recursión)
+    // Sólo con ?incluirProductos=true: los primeros productos (sin categoría dentro para evitar recursión)
+    // y el número total de productos de la categoría
     private List<ProductoResumenDTO> productos;
+    private Long numeroProductos;
+    private Long version; // la del ETag
 }
\ No newline at end of file
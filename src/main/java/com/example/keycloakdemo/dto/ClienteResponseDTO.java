@@ -1,6 +1,8 @@
 package com.example.keycloakdemo.dto;
 
 import lombok.Data;
+
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -14,6 +16,11 @@ public class ClienteResponseDTO {
     private String direccion;
     private LocalDateTime fechaRegistro;
     
-    // Lista resumida de pedidos (solo info básica, sin items)
+    // Totales de todos sus pedidos (sin contar los archivados)
+    private Long numeroPedidos;
+    private BigDecimal totalPedidos;
+    private LocalDateTime fechaUltimoPedido;
+
+    // Últimos pedidos resumidos (solo info básica, sin items)
     private List<PedidoResumenDTO> pedidos;
 }
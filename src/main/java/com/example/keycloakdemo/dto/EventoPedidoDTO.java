@@ -0,0 +1,18 @@
+package com.example.keycloakdemo.dto;
+
+import com.example.keycloakdemo.model.EstadoPedido;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+public class EventoPedidoDTO {
+
+    private Long id;  // Secuencia del evento, se envía como id SSE (Last-Event-ID)
+    private Long pedidoId;
+    private Long clienteId;
+    private EstadoPedido estado;
+    private BigDecimal total;
+    private LocalDateTime fecha;
+}
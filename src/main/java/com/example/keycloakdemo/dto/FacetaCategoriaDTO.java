@@ -0,0 +1,10 @@
+package com.example.keycloakdemo.dto;
+
+import lombok.Data;
+
+@Data
+public class FacetaCategoriaDTO {
+    private Long id;
+    private String nombre;
+    private Long numeroProductos;
+}
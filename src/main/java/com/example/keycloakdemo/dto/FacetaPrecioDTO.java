@@ -0,0 +1,12 @@
+package com.example.keycloakdemo.dto;
+
+import java.math.BigDecimal;
+
+import lombok.Data;
+
+@Data
+public class FacetaPrecioDTO {
+    private BigDecimal desde;  // incluido
+    private BigDecimal hasta;  // excluido; null en el último tramo
+    private Long numeroProductos;
+}
@@ -0,0 +1,12 @@
+package com.example.keycloakdemo.dto;
+
+import java.math.BigDecimal;
+
+import lombok.Data;
+
+@Data
+public class GastoClienteDTO {
+    private Long clienteId;
+    private Long pedidos;
+    private BigDecimal gasto;
+}
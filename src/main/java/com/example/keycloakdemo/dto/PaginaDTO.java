@@ -0,0 +1,14 @@
+package com.example.keycloakdemo.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class PaginaDTO<T> {
+
+    private List<T> contenido;
+    private int limite;
+    private String siguienteCursor;  // Valor para ?after= de la página siguiente; null en la última
+    private String siguiente;  // URL completa de la página siguiente
+}
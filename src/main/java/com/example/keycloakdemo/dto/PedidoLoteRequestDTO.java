@@ -0,0 +1,17 @@
+package com.example.keycloakdemo.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class PedidoLoteRequestDTO {
+
+    @NotEmpty(message = "El lote debe contener al menos un pedido")
+    @Size(max = 500, message = "El lote no puede superar los 500 pedidos")
+    @Valid  // Valida cada pedido del lote
+    private List<PedidoRequestDTO> pedidos;
+}
@@ -0,0 +1,12 @@
+package com.example.keycloakdemo.dto;
+
+import lombok.Data;
+
+@Data
+public class PedidoLoteResultadoDTO {
+
+    private Integer indice;  // Posición del pedido dentro del lote
+    private boolean creado;
+    private PedidoResponseDTO pedido;  // Sólo si se creó
+    private String error;  // Sólo si se rechazó
+}
@@ -16,4 +16,6 @@ public class PedidoResponseDTO {
     private BigDecimal total;
     private EstadoPedido estado;  // Enum directamente
     private LocalDateTime fechaPedido;
+    private Boolean archivado;  // true si se leyó de pedidos_archivo
+    private Long version;  // la del ETag; null en pedidos archivados
 }
\ No newline at end of file
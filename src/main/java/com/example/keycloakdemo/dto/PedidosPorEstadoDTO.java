@@ -0,0 +1,14 @@
+package com.example.keycloakdemo.dto;
+
+import java.math.BigDecimal;
+
+import com.example.keycloakdemo.model.EstadoPedido;
+
+import lombok.Data;
+
+@Data
+public class PedidosPorEstadoDTO {
+    private EstadoPedido estado;
+    private Long pedidos;
+    private BigDecimal ingresos;
+}
@@ -12,4 +12,5 @@ public class ProductoResponseDTO {
    private BigDecimal precio;
    private Integer stock;
    private CategoriaResumenDTO categoria; // Versión simplificada de Categoria
+   private Long version; // la del ETag
 }
@@ -0,0 +1,15 @@
+package com.example.keycloakdemo.dto;
+
+import java.util.List;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+// Página de GET /api/productos/filtro; las facetas sólo van en la primera página
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class ProductosFiltradosDTO extends PaginaDTO<ProductoResponseDTO> {
+
+    private List<FacetaCategoriaDTO> categorias;
+    private List<FacetaPrecioDTO> precios;
+}
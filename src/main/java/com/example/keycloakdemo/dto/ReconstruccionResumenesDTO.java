@@ -0,0 +1,9 @@
+package com.example.keycloakdemo.dto;
+
+import lombok.Data;
+
+@Data
+public class ReconstruccionResumenesDTO {
+    private int categorias;
+    private int corregidas;  // resúmenes que no coincidían con los productos
+}
@@ -0,0 +1,18 @@
+package com.example.keycloakdemo.dto;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import lombok.Data;
+
+@Data
+public class ReconstruccionVentasDTO {
+    private LocalDate desde;
+    private LocalDate hasta;
+    private LocalDate ultimoDia;  // Último día ya reconstruido
+    private int diasProcesados;
+    private boolean enCurso;
+    private LocalDateTime fechaInicio;
+    private LocalDateTime fechaFin;
+    private String error;  // Sólo si falló
+}
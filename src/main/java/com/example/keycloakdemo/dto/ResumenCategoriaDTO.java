@@ -0,0 +1,14 @@
+package com.example.keycloakdemo.dto;
+
+import java.math.BigDecimal;
+
+import lombok.Data;
+
+@Data
+public class ResumenCategoriaDTO {
+    private Long categoriaId;
+    private Long numeroProductos;
+    private BigDecimal precioMinimo;  // null si no tiene productos
+    private BigDecimal precioMaximo;
+    private Long stockTotal;
+}
@@ -0,0 +1,17 @@
+package com.example.keycloakdemo.dto;
+
+import com.example.keycloakdemo.model.EstadoSolicitud;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class SolicitudPedidoResponseDTO {
+
+    private String id;  // ID de seguimiento devuelto con el 202
+    private EstadoSolicitud estado;
+    private LocalDateTime fechaRecepcion;
+    private LocalDateTime fechaFin;
+    private PedidoResponseDTO pedido;  // Sólo si se completó
+    private String error;  // Sólo si falló
+}
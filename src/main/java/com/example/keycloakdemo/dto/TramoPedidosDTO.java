@@ -0,0 +1,10 @@
+package com.example.keycloakdemo.dto;
+
+import lombok.Data;
+
+@Data
+public class TramoPedidosDTO {
+    private Integer desde;  // unidades por pedido, incluido
+    private Integer hasta;  // incluido; null en el último tramo
+    private Long pedidos;
+}
@@ -0,0 +1,20 @@
+package com.example.keycloakdemo.dto;
+
+import com.example.keycloakdemo.model.EstadoPedido;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class TransicionLoteRequestDTO {
+
+    @NotEmpty(message = "Debe indicar al menos un pedido")
+    @Size(max = 5000, message = "No se pueden actualizar más de 5000 pedidos a la vez")
+    private List<Long> ids;
+
+    @NotNull(message = "El estado destino es obligatorio")
+    private EstadoPedido estado;
+}
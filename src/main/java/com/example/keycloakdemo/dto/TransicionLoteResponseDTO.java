@@ -0,0 +1,14 @@
+package com.example.keycloakdemo.dto;
+
+import com.example.keycloakdemo.model.EstadoPedido;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class TransicionLoteResponseDTO {
+
+    private EstadoPedido estado;
+    private List<Long> actualizados;
+    private List<Long> rechazados;  // No existen o su estado actual no permite la transición
+}
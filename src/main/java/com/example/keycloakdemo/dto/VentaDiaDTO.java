@@ -0,0 +1,15 @@
+package com.example.keycloakdemo.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import lombok.Data;
+
+@Data
+public class VentaDiaDTO {
+    private LocalDate dia;
+    private Long id;  // ID del producto o de la categoría, según la agrupación
+    private BigDecimal ingresos;
+    private Long unidades;
+    private Long pedidos;
+}
@@ -0,0 +1,14 @@
+package com.example.keycloakdemo.event;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import com.example.keycloakdemo.model.EstadoPedido;
+
+/**
+ * Un pedido se ha creado o ha cambiado de estado. Lo publica PedidoService
+ * dentro de la transacción; los oyentes lo reciben tras el commit.
+ */
+public record PedidoCambiadoEvent(Long pedidoId, Long clienteId, EstadoPedido estado, BigDecimal total,
+        LocalDateTime fechaPedido, int unidades) {
+}
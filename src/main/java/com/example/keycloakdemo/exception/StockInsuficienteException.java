@@ -0,0 +1,21 @@
+package com.example.keycloakdemo.exception;
+
+import java.util.List;
+
+public class StockInsuficienteException extends RuntimeException {
+
+    private final List<LineaSinStock> lineas;
+
+    public StockInsuficienteException(List<LineaSinStock> lineas) {
+        super("Stock insuficiente en " + lineas.size() + " línea(s) del pedido");
+        this.lineas = List.copyOf(lineas);
+    }
+
+    public List<LineaSinStock> getLineas() {
+        return lineas;
+    }
+
+    // Detalle de cada línea que no se pudo reservar
+    public record LineaSinStock(int linea, Long productoId, String nombre, Integer solicitado, Integer disponible) {
+    }
+}
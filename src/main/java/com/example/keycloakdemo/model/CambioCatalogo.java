@@ -0,0 +1,48 @@
+package com.example.keycloakdemo.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Apunte del registro de cambios del catálogo, escrito en la misma transacción
+ * que el cambio. Las demás instancias lo leen para invalidar su caché local.
+ *
+ * El ID es IDENTITY (sin pool por instancia) para que crezca en el orden en que
+ * se insertan los apuntes, que es lo que permite leer por marca de agua.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "cambio_catalogo")
+public class CambioCatalogo {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 30)
+    private TipoCambioCatalogo tipo;
+
+    // IDs afectados separados por comas (como mucho CatalogoCache.IDS_POR_APUNTE)
+    @Column(nullable = false, length = 4000)
+    private String ids;
+
+    // Instancia que hizo el cambio: ella ya invalidó su caché tras el commit
+    @Column(nullable = false, length = 36)
+    private String nodo;
+
+    @Column(nullable = false)
+    private LocalDateTime fecha = LocalDateTime.now();
+}
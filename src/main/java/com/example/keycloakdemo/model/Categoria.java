@@ -3,12 +3,15 @@ package com.example.keycloakdemo.model;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.hibernate.annotations.ColumnDefault;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.Version;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -29,4 +32,10 @@ public class Categoria {
     
     @OneToMany(mappedBy = "categoria")
     private List<Producto> productos = new ArrayList<>();
+
+    // Sube con cada cambio; es el ETag de la categoría
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
 }
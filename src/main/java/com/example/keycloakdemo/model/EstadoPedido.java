@@ -1,5 +1,37 @@
 package com.example.keycloakdemo.model;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 public enum EstadoPedido {
-    PENDIENTE, CONFIRMADO, ENVIADO, ENTREGADO, CANCELADO
+    PENDIENTE, CONFIRMADO, ENVIADO, ENTREGADO, CANCELADO;
+
+    // Transiciones permitidas: PENDIENTE -> CONFIRMADO -> ENVIADO -> ENTREGADO, y CANCELADO antes del envío
+    public Set<EstadoPedido> siguientes() {
+        return switch (this) {
+            case PENDIENTE -> EnumSet.of(CONFIRMADO, CANCELADO);
+            case CONFIRMADO -> EnumSet.of(ENVIADO, CANCELADO);
+            case ENVIADO -> EnumSet.of(ENTREGADO);
+            case ENTREGADO, CANCELADO -> EnumSet.noneOf(EstadoPedido.class);
+        };
+    }
+
+    public boolean puedePasarA(EstadoPedido destino) {
+        return siguientes().contains(destino);
+    }
+
+    public boolean esTerminal() {
+        return siguientes().isEmpty();
+    }
+
+    // Estados desde los que se puede llegar a destino
+    public static Set<EstadoPedido> origenesDe(EstadoPedido destino) {
+        Set<EstadoPedido> origenes = EnumSet.noneOf(EstadoPedido.class);
+        for (EstadoPedido estado : values()) {
+            if (estado.puedePasarA(destino)) {
+                origenes.add(estado);
+            }
+        }
+        return origenes;
+    }
 }
@@ -0,0 +1,5 @@
+package com.example.keycloakdemo.model;
+
+public enum EstadoSolicitud {
+    EN_COLA, PROCESANDO, COMPLETADA, FALLIDA
+}
@@ -0,0 +1,51 @@
+package com.example.keycloakdemo.model;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.domain.Persistable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Idempotency-Key ya procesada y el pedido que generó. Se guarda en la misma
+ * transacción que el pedido para que un reinicio no olvide la clave.
+ *
+ * Siempre es nueva: save() hace persist (INSERT) y no merge, así que si otra
+ * instancia ya registró la clave falla la clave primaria en vez de sobrescribirla.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "idempotencia_pedido")
+public class IdempotenciaPedido implements Persistable<String> {
+    @Id
+    @Column(length = 100)
+    private String clave;
+
+    @Column(nullable = false)
+    private Long pedidoId;
+
+    // SHA-256 (hex) de la petición original, para detectar la misma clave con otro cuerpo
+    @Column(nullable = false, length = 64)
+    private String huella;
+
+    @Column(nullable = false)
+    private LocalDateTime fecha = LocalDateTime.now();
+
+    @Override
+    public String getId() {
+        return clave;
+    }
+
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.keycloakdemo.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Instancia que sigue cambio_catalogo y hasta dónde lo ha consumido. Los apuntes
+ * por debajo de la marca de todas las instancias vivas se pueden borrar.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "nodo_catalogo")
+public class NodoCatalogo {
+    @Id
+    @Column(length = 36)
+    private String nodo;
+
+    // Todos los apuntes con ID <= marca están ya aplicados en esta instancia
+    @Column(nullable = false)
+    private Long marca;
+
+    @Column(nullable = false)
+    private LocalDateTime latido;
+}
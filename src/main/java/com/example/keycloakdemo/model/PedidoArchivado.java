@@ -0,0 +1,65 @@
+package com.example.keycloakdemo.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
+import jakarta.persistence.NamedSubgraph;
+import jakarta.persistence.OneToMany;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Pedido terminado (ENTREGADO o CANCELADO) movido fuera de la tabla pedidos.
+ * Conserva el ID original; las filas sólo las escribe el archivador.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@NamedEntityGraph(name = "PedidoArchivado.detalle",
+        attributeNodes = {
+                @NamedAttributeNode("cliente"),
+                @NamedAttributeNode(value = "items", subgraph = "items")
+        },
+        subgraphs = @NamedSubgraph(name = "items", attributeNodes = @NamedAttributeNode("producto")))
+@Table(name = "pedidos_archivo", indexes = {
+        @Index(name = "idx_pedidos_archivo_cliente", columnList = "cliente_id"),
+        @Index(name = "idx_pedidos_archivo_fecha", columnList = "fecha_pedido")
+})
+public class PedidoArchivado {
+    @Id
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "cliente_id", nullable = false)
+    private Cliente cliente;
+
+    @Column(nullable = false)
+    private LocalDateTime fechaPedido;
+
+    @Enumerated(EnumType.STRING)
+    private EstadoPedido estado;
+
+    private BigDecimal total;
+
+    @Column(nullable = false)
+    private LocalDateTime fechaArchivo;
+
+    @OneToMany(mappedBy = "pedido")
+    private List<PedidoItemArchivado> items = new ArrayList<>();
+}
@@ -2,13 +2,19 @@ package com.example.keycloakdemo.model;
 
 import java.math.BigDecimal;
 
+import org.hibernate.annotations.ColumnDefault;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -17,6 +23,12 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+// Para GET /api/productos/filtro: categoría + rango de precio, y rango de precio solo.
+// stock no entra en los índices: así sus UPDATE en cada pedido no tienen que tocarlos
+@Table(name = "producto", indexes = {
+        @Index(name = "idx_producto_categoria_precio", columnList = "categoria_id, precio"),
+        @Index(name = "idx_producto_precio", columnList = "precio")
+})
 public class Producto {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -32,7 +44,13 @@ public class Producto {
     
     private Integer stock;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "categoria_id")
     private Categoria categoria;
+
+    // Sube con cada cambio, también en los UPDATE masivos de stock; es el ETag del producto
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
 }
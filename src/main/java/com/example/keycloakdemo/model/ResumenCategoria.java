@@ -0,0 +1,38 @@
+package com.example.keycloakdemo.model;
+
+import java.math.BigDecimal;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Agregados de los productos de una categoría, mantenidos al crear, editar o
+ * borrar productos y con cada cambio de stock (ResumenCategoriaService).
+ * Se leen sin tocar la tabla producto.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "categoria_resumen")
+public class ResumenCategoria {
+    @Id
+    @Column(name = "categoria_id")
+    private Long categoriaId;
+
+    @Column(nullable = false)
+    private Long numeroProductos;
+
+    // null mientras la categoría no tenga productos
+    private BigDecimal precioMinimo;
+
+    private BigDecimal precioMaximo;
+
+    @Column(nullable = false)
+    private Long stockTotal;
+}
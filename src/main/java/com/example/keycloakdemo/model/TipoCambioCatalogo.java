@@ -0,0 +1,10 @@
+package com.example.keycloakdemo.model;
+
+// Qué invalida cada apunte de cambio_catalogo (ver CatalogoCache)
+public enum TipoCambioCatalogo {
+    PRODUCTOS,                // cambios de productos existentes (stock, precio...)
+    PRODUCTOS_EDITADOS,       // cambian nombre o descripción: además el índice de búsqueda
+    ALTAS_BAJAS_PRODUCTOS,    // además cambian los IDs de las páginas
+    CATEGORIA,
+    CATEGORIA_Y_PRODUCTOS     // p.ej. cambio de nombre: va dentro de cada producto
+}
@@ -0,0 +1,44 @@
+package com.example.keycloakdemo.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Ventas de una categoría en un día, sin contar los pedidos cancelados.
+// Un pedido cuenta una vez aunque lleve varios productos de la categoría
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "venta_categoria_dia",
+        uniqueConstraints = @UniqueConstraint(name = "uk_venta_categoria_dia", columnNames = {"dia", "categoria_id"}))
+public class VentaCategoriaDia {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private LocalDate dia;
+
+    @Column(nullable = false)
+    private Long categoriaId;
+
+    @Column(nullable = false)
+    private BigDecimal ingresos;
+
+    @Column(nullable = false)
+    private Long unidades;
+
+    @Column(nullable = false)
+    private Long pedidos;
+}
@@ -0,0 +1,54 @@
+package com.example.keycloakdemo.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Cambio en las ventas de un producto y día, escrito en la transacción del pedido
+ * que lo causa (negativo en las cancelaciones). Sólo se insertan: la compactación
+ * de VentasService los suma a venta_producto_dia y venta_categoria_dia y los borra.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "venta_delta", indexes = @Index(name = "idx_venta_delta_dia", columnList = "dia"))
+public class VentaDelta {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Día del pedido, también cuando el apunte es su cancelación
+    @Column(nullable = false)
+    private LocalDate dia;
+
+    @Column(nullable = false)
+    private Long productoId;
+
+    private Long categoriaId;
+
+    @Column(nullable = false)
+    private BigDecimal ingresos;
+
+    @Column(nullable = false)
+    private Long unidades;
+
+    // Pedidos que contienen el producto
+    @Column(nullable = false)
+    private Integer pedidos;
+
+    // Pedidos en los que éste es el primer producto de su categoría: así no se cuentan dos veces
+    @Column(nullable = false)
+    private Integer pedidosCategoria;
+}
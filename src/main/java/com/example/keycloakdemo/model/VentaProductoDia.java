@@ -0,0 +1,43 @@
+package com.example.keycloakdemo.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Ventas de un producto en un día, sin contar los pedidos cancelados
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "venta_producto_dia",
+        uniqueConstraints = @UniqueConstraint(name = "uk_venta_producto_dia", columnNames = {"dia", "producto_id"}))
+public class VentaProductoDia {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private LocalDate dia;
+
+    @Column(nullable = false)
+    private Long productoId;
+
+    @Column(nullable = false)
+    private BigDecimal ingresos;
+
+    @Column(nullable = false)
+    private Long unidades;
+
+    @Column(nullable = false)
+    private Long pedidos;
+}
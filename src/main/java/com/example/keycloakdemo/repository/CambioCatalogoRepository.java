@@ -0,0 +1,25 @@
+package com.example.keycloakdemo.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.keycloakdemo.model.CambioCatalogo;
+
+@Repository
+public interface CambioCatalogoRepository extends JpaRepository<CambioCatalogo, Long> {
+
+    List<CambioCatalogo> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @Query("SELECT COALESCE(MAX(c.id), 0) FROM CambioCatalogo c")
+    long findMaxId();
+
+    @Modifying
+    @Query("DELETE FROM CambioCatalogo c WHERE c.id <= :marca")
+    int borrarHasta(@Param("marca") long marca);
+}
@@ -1,8 +1,12 @@
 package com.example.keycloakdemo.repository;
 
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.example.keycloakdemo.model.Categoria;
@@ -12,4 +16,11 @@ public interface CategoriaRepository extends JpaRepository<Categoria, Long> {
     Optional<Categoria> findByNombre(String nombre);
 
     boolean existsByNombre(String nombre);
+
+    // Paginación por cursor sobre la clave primaria
+    List<Categoria> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    // Sólo la versión, para responder 304 a If-None-Match sin leer la categoría
+    @Query("SELECT c.version FROM Categoria c WHERE c.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
 }
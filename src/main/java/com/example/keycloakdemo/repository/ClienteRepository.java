@@ -1,7 +1,9 @@
 package com.example.keycloakdemo.repository;
 
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -12,4 +14,7 @@ public interface ClienteRepository extends JpaRepository<Cliente, Long> {
     Optional<Cliente> findByEmail(String email);
     Optional<Cliente> findByKeycloakUserId(String keycloakUserId);
     boolean existsByEmail(String email);   
+
+    // Paginación por cursor sobre la clave primaria
+    List<Cliente> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
 }
@@ -0,0 +1,16 @@
+package com.example.keycloakdemo.repository;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+
+/**
+ * Filtro de GET /api/productos/filtro. Los campos null no filtran; ids son los
+ * productos que encontró el índice de búsqueda para el nombre (null sin nombre).
+ */
+public record FiltroProductos(
+        Long categoriaId,
+        BigDecimal precioMin,
+        BigDecimal precioMax,
+        boolean enStock,
+        Collection<Long> ids) {
+}
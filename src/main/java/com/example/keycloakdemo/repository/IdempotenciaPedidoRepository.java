@@ -0,0 +1,19 @@
+package com.example.keycloakdemo.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.keycloakdemo.model.IdempotenciaPedido;
+
+@Repository
+public interface IdempotenciaPedidoRepository extends JpaRepository<IdempotenciaPedido, String> {
+
+    @Modifying
+    @Query("DELETE FROM IdempotenciaPedido i WHERE i.fecha < :limite")
+    int borrarAnterioresA(@Param("limite") LocalDateTime limite);
+}
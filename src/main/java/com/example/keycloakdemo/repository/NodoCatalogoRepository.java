@@ -0,0 +1,28 @@
+package com.example.keycloakdemo.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.keycloakdemo.model.NodoCatalogo;
+
+@Repository
+public interface NodoCatalogoRepository extends JpaRepository<NodoCatalogo, String> {
+
+    @Modifying
+    @Query("UPDATE NodoCatalogo n SET n.marca = :marca, n.latido = :latido WHERE n.nodo = :nodo")
+    int actualizar(@Param("nodo") String nodo, @Param("marca") long marca, @Param("latido") LocalDateTime latido);
+
+    @Modifying
+    @Query("DELETE FROM NodoCatalogo n WHERE n.latido < :limite")
+    int borrarSinLatidoDesde(@Param("limite") LocalDateTime limite);
+
+    // Marca más baja de las instancias registradas: hasta ahí lo han leído todas
+    @Query("SELECT MIN(n.marca) FROM NodoCatalogo n")
+    Optional<Long> findMarcaMinima();
+}
@@ -0,0 +1,91 @@
+package com.example.keycloakdemo.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.keycloakdemo.model.EstadoPedido;
+import com.example.keycloakdemo.model.PedidoArchivado;
+
+import jakarta.persistence.QueryHint;
+
+@Repository
+public interface PedidoArchivadoRepository extends JpaRepository<PedidoArchivado, Long> {
+    @EntityGraph("PedidoArchivado.detalle")
+    Optional<PedidoArchivado> findWithItemsById(Long id);
+
+    @EntityGraph("PedidoArchivado.detalle")
+    @Query("SELECT p FROM PedidoArchivado p WHERE p.cliente.id = :clienteId ORDER BY p.id")
+    List<PedidoArchivado> findByClienteIdWithItems(@Param("clienteId") Long clienteId);
+
+    @EntityGraph("PedidoArchivado.detalle")
+    @Query("SELECT p FROM PedidoArchivado p WHERE p.id IN :ids ORDER BY p.id")
+    List<PedidoArchivado> findAllWithItemsAndProductosByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT p.id FROM PedidoArchivado p WHERE p.id > :id ORDER BY p.id")
+    List<Long> findIdsByIdGreaterThan(@Param("id") Long id, Limit limit);
+
+    // Copias INSERT ... SELECT: las filas no pasan por la aplicación
+    @Modifying
+    @Query(value = "INSERT INTO pedidos_archivo (id, cliente_id, fecha_pedido, estado, total, fecha_archivo) "
+            + "SELECT id, cliente_id, fecha_pedido, estado, total, CURRENT_TIMESTAMP FROM pedidos WHERE id IN (:ids)",
+            nativeQuery = true)
+    int copiarPedidos(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "INSERT INTO pedido_item_archivo (id, pedido_id, producto_id, cantidad, precio_unitario, subtotal) "
+            + "SELECT id, pedido_id, producto_id, cantidad, precio_unitario, subtotal FROM pedido_item WHERE pedido_id IN (:ids)",
+            nativeQuery = true)
+    int copiarItems(@Param("ids") Collection<Long> ids);
+
+    // Como PedidoRepository.streamFilasParaExportar, sobre pedidos_archivo e idx_pedido_item_archivo_pedido
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query(value = "SELECT p.id, p.fecha_pedido, p.estado, p.cliente_id, c.email, p.total, "
+            + "i.producto_id, pr.nombre, i.cantidad, i.precio_unitario, i.subtotal, i.id "
+            + "FROM pedidos_archivo p JOIN cliente c ON c.id = p.cliente_id "
+            + "LEFT JOIN pedido_item_archivo i ON i.pedido_id = p.id LEFT JOIN producto pr ON pr.id = i.producto_id "
+            + "WHERE p.estado IN (:estados) AND p.fecha_pedido >= :desde AND p.fecha_pedido < :hasta "
+            + "ORDER BY p.id, i.id", nativeQuery = true)
+    Stream<Object[]> streamFilasParaExportar(@Param("estados") Collection<String> estados,
+            @Param("desde") LocalDateTime desde, @Param("hasta") LocalDateTime hasta);
+
+    // Ventas de [inicio, fin) para reconstruir los resúmenes diarios: [productoId, ingresos, unidades, pedidos]
+    @Query("SELECT i.producto.id, SUM(i.subtotal), SUM(i.cantidad), COUNT(DISTINCT p.id) FROM PedidoItemArchivado i JOIN i.pedido p "
+            + "WHERE p.estado IN :estados AND p.fechaPedido >= :inicio AND p.fechaPedido < :fin GROUP BY i.producto.id")
+    List<Object[]> sumarVentasPorProducto(@Param("estados") Collection<EstadoPedido> estados,
+            @Param("inicio") LocalDateTime inicio, @Param("fin") LocalDateTime fin);
+
+    // [categoriaId, ingresos, unidades, pedidos]; un pedido cuenta una vez por categoría
+    @Query("SELECT c.id, SUM(i.subtotal), SUM(i.cantidad), COUNT(DISTINCT p.id) FROM PedidoItemArchivado i JOIN i.pedido p "
+            + "JOIN i.producto pr JOIN pr.categoria c "
+            + "WHERE p.estado IN :estados AND p.fechaPedido >= :inicio AND p.fechaPedido < :fin GROUP BY c.id")
+    List<Object[]> sumarVentasPorCategoria(@Param("estados") Collection<EstadoPedido> estados,
+            @Param("inicio") LocalDateTime inicio, @Param("fin") LocalDateTime fin);
+
+    // Baja de un cliente: sus pedidos archivados también lo referencian
+    @Modifying
+    @Query("DELETE FROM PedidoItemArchivado i "
+            + "WHERE i.pedido.id IN (SELECT p.id FROM PedidoArchivado p WHERE p.cliente.id = :clienteId)")
+    int borrarItemsDeCliente(@Param("clienteId") Long clienteId);
+
+    @Modifying
+    @Query("DELETE FROM PedidoArchivado p WHERE p.cliente.id = :clienteId")
+    int borrarPorCliente(@Param("clienteId") Long clienteId);
+
+    // Carga de AnaliticaPedidosService, por páginas de ID: [id, clienteId, fechaPedido, estado, total, unidades]
+    @Query("SELECT p.id, p.cliente.id, p.fechaPedido, p.estado, p.total, COALESCE(SUM(i.cantidad), 0) "
+            + "FROM PedidoArchivado p LEFT JOIN p.items i WHERE p.id > :id "
+            + "GROUP BY p.id, p.cliente.id, p.fechaPedido, p.estado, p.total ORDER BY p.id")
+    List<Object[]> findDatosAnaliticaByIdGreaterThan(@Param("id") Long id, Limit limit);
+}
@@ -1,15 +1,156 @@
 package com.example.keycloakdemo.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.example.keycloakdemo.model.EstadoPedido;
 import com.example.keycloakdemo.model.Pedido;
 
+import jakarta.persistence.QueryHint;
+
 @Repository
-public interface PedidoRepository extends JpaRepository<Pedido, Long> {
+public interface PedidoRepository extends JpaRepository<Pedido, Long>, PedidoRepositoryCustom {
     List<Pedido> findByClienteId(Long clienteId);
     List<Pedido> findByEstado(EstadoPedido estado); 
+
+    // Lecturas para PedidoResponseDTO: cliente, items y productos en una sola consulta (grafo Pedido.detalle)
+    @EntityGraph("Pedido.detalle")
+    Optional<Pedido> findWithItemsById(Long id);
+
+    @EntityGraph("Pedido.detalle")
+    @Query("SELECT p FROM Pedido p WHERE p.cliente.id = :clienteId ORDER BY p.id")
+    List<Pedido> findByClienteIdWithItems(@Param("clienteId") Long clienteId);
+
+    @EntityGraph("Pedido.detalle")
+    @Query("SELECT p FROM Pedido p WHERE p.id IN :ids ORDER BY p.id")
+    List<Pedido> findAllWithItemsAndProductosByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Paginación por cursor: primero los IDs (LIMIT en BD) y después el detalle de esos IDs;
+    // con el fetch de items en la misma consulta Hibernate paginaría en memoria
+    @Query("SELECT p.id FROM Pedido p WHERE p.id > :id ORDER BY p.id")
+    List<Long> findIdsByIdGreaterThan(@Param("id") Long id, Limit limit);
+
+    // Sólo la versión, para responder 304 a If-None-Match sin leer el pedido
+    @Query("SELECT p.version FROM Pedido p WHERE p.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    // [id, estado] de cada pedido, sin cargar el pedido completo
+    @Query("SELECT p.id, p.estado FROM Pedido p WHERE p.id IN :ids")
+    List<Object[]> findEstadosByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Cambia el estado sólo de los pedidos que siguen en alguno de los estados de origen
+    @Modifying
+    @Query("UPDATE Pedido p SET p.estado = :destino, p.version = p.version + 1 "
+            + "WHERE p.id IN :ids AND p.estado IN :origenes")
+    int actualizarEstado(@Param("ids") Collection<Long> ids,
+            @Param("origenes") Collection<EstadoPedido> origenes,
+            @Param("destino") EstadoPedido destino);
+
+    @Query("SELECT p.id FROM Pedido p WHERE p.id IN :ids AND p.estado IN :estados")
+    List<Long> findIdsByIdInAndEstadoIn(@Param("ids") Collection<Long> ids,
+            @Param("estados") Collection<EstadoPedido> estados);
+
+    // [id, clienteId, estado, total, fechaPedido, unidades] para notificar cambios hechos con UPDATE masivos
+    @Query("SELECT p.id, p.cliente.id, p.estado, p.total, p.fechaPedido, "
+            + "(SELECT COALESCE(SUM(i.cantidad), 0) FROM PedidoItem i WHERE i.pedido = p) "
+            + "FROM Pedido p WHERE p.id IN :ids")
+    List<Object[]> findDatosEventoByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Carga de AnaliticaPedidosService, por páginas de ID: [id, clienteId, fechaPedido, estado, total, unidades]
+    @Query("SELECT p.id, p.cliente.id, p.fechaPedido, p.estado, p.total, COALESCE(SUM(i.cantidad), 0) "
+            + "FROM Pedido p LEFT JOIN p.items i WHERE p.id > :id "
+            + "GROUP BY p.id, p.cliente.id, p.fechaPedido, p.estado, p.total ORDER BY p.id")
+    List<Object[]> findDatosAnaliticaByIdGreaterThan(@Param("id") Long id, Limit limit);
+
+    // [productoId, cantidad total] de las líneas de los pedidos indicados
+    @Query("SELECT i.producto.id, SUM(i.cantidad) FROM PedidoItem i WHERE i.pedido.id IN :ids GROUP BY i.producto.id")
+    List<Object[]> sumarCantidadesPorProducto(@Param("ids") Collection<Long> ids);
+
+    // [pedidoId, fechaPedido, productoId, categoriaId, ingresos, unidades] por pedido y producto, para venta_delta
+    @Query("SELECT p.id, p.fechaPedido, pr.id, c.id, SUM(i.subtotal), SUM(i.cantidad) FROM PedidoItem i "
+            + "JOIN i.pedido p JOIN i.producto pr LEFT JOIN pr.categoria c "
+            + "WHERE p.id IN :ids GROUP BY p.id, p.fechaPedido, pr.id, c.id")
+    List<Object[]> findLineasVentaByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Ventas de [inicio, fin) para reconstruir los resúmenes diarios: [productoId, ingresos, unidades, pedidos]
+    @Query("SELECT i.producto.id, SUM(i.subtotal), SUM(i.cantidad), COUNT(DISTINCT p.id) FROM PedidoItem i JOIN i.pedido p "
+            + "WHERE p.estado IN :estados AND p.fechaPedido >= :inicio AND p.fechaPedido < :fin GROUP BY i.producto.id")
+    List<Object[]> sumarVentasPorProducto(@Param("estados") Collection<EstadoPedido> estados,
+            @Param("inicio") LocalDateTime inicio, @Param("fin") LocalDateTime fin);
+
+    // [categoriaId, ingresos, unidades, pedidos]; un pedido cuenta una vez por categoría
+    @Query("SELECT c.id, SUM(i.subtotal), SUM(i.cantidad), COUNT(DISTINCT p.id) FROM PedidoItem i JOIN i.pedido p "
+            + "JOIN i.producto pr JOIN pr.categoria c "
+            + "WHERE p.estado IN :estados AND p.fechaPedido >= :inicio AND p.fechaPedido < :fin GROUP BY c.id")
+    List<Object[]> sumarVentasPorCategoria(@Param("estados") Collection<EstadoPedido> estados,
+            @Param("inicio") LocalDateTime inicio, @Param("fin") LocalDateTime fin);
+
+    // [clienteId, nº de pedidos, suma de totales, fecha del último pedido] de cada cliente
+    @Query("SELECT p.cliente.id, COUNT(p), SUM(p.total), MAX(p.fechaPedido) FROM Pedido p "
+            + "WHERE p.cliente.id IN :clienteIds GROUP BY p.cliente.id")
+    List<Object[]> resumirPorCliente(@Param("clienteIds") Collection<Long> clienteIds);
+
+    // [id, cliente_id, fecha_pedido, estado, total, cantidad_items] de los últimos max pedidos de cada cliente
+    @Query(value = "SELECT t.id, t.cliente_id, t.fecha_pedido, t.estado, t.total, "
+            + "(SELECT COALESCE(SUM(i.cantidad), 0) FROM pedido_item i WHERE i.pedido_id = t.id) AS cantidad_items "
+            + "FROM (SELECT p.id, p.cliente_id, p.fecha_pedido, p.estado, p.total, "
+            + "ROW_NUMBER() OVER (PARTITION BY p.cliente_id ORDER BY p.fecha_pedido DESC, p.id DESC) AS fila "
+            + "FROM pedidos p WHERE p.cliente_id IN (:clienteIds)) t "
+            + "WHERE t.fila <= :max ORDER BY t.cliente_id, t.fila", nativeQuery = true)
+    List<Object[]> findUltimosPorCliente(@Param("clienteIds") Collection<Long> clienteIds, @Param("max") int max);
+
+    // Candidatos a archivar, del más antiguo al más reciente (usa el índice estado + fecha_pedido).
+    // Quedan bloqueados hasta el fin del bloque; con SKIP LOCKED, si el archivador corre a la vez
+    // en varias instancias cada una se lleva pedidos distintos en lugar de esperar o duplicarlos
+    @Query(value = "SELECT id FROM pedidos WHERE estado IN (:estados) AND fecha_pedido < :limite "
+            + "ORDER BY fecha_pedido, id LIMIT :max FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> findIdsArchivables(@Param("estados") Collection<String> estados,
+            @Param("limite") LocalDateTime limite, @Param("max") int max);
+
+    @Modifying
+    @Query("DELETE FROM PedidoItem i WHERE i.pedido.id IN :ids")
+    int borrarItemsDePedidos(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM Pedido p WHERE p.id IN :ids")
+    int borrarPorIds(@Param("ids") Collection<Long> ids);
+
+    // [id, fechaPedido] de los pedidos en un estado (usa el índice estado + fecha_pedido)
+    @Query("SELECT p.id, p.fechaPedido FROM Pedido p WHERE p.estado = :estado ORDER BY p.fechaPedido")
+    List<Object[]> findIdsYFechasByEstado(@Param("estado") EstadoPedido estado);
+
+    @Query("SELECT p.id FROM Pedido p WHERE p.id IN :ids AND p.estado = :estado AND p.fechaPedido <= :limite")
+    List<Long> findIdsByIdInAndEstadoAndFechaPedidoHasta(@Param("ids") Collection<Long> ids,
+            @Param("estado") EstadoPedido estado, @Param("limite") LocalDateTime limite);
+
+    /**
+     * Filas para exportar, ordenadas por pedido: una por item, o una sin producto si
+     * el pedido no tiene items. [pedido_id, fecha_pedido, estado, cliente_id, email,
+     * total, producto_id, nombre, cantidad, precio_unitario, subtotal, item_id].
+     * El orden es el de la clave primaria y de idx_pedido_item_pedido, así que la
+     * primera fila sale sin ordenar el resultado. Se leen con cursor JDBC de fetchSize
+     * filas; hay que consumir el Stream dentro de una transacción y cerrarlo. Los
+     * archivados, con PedidoArchivadoRepository.streamFilasParaExportar.
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query(value = "SELECT p.id, p.fecha_pedido, p.estado, p.cliente_id, c.email, p.total, "
+            + "i.producto_id, pr.nombre, i.cantidad, i.precio_unitario, i.subtotal, i.id "
+            + "FROM pedidos p JOIN cliente c ON c.id = p.cliente_id "
+            + "LEFT JOIN pedido_item i ON i.pedido_id = p.id LEFT JOIN producto pr ON pr.id = i.producto_id "
+            + "WHERE p.estado IN (:estados) AND p.fecha_pedido >= :desde AND p.fecha_pedido < :hasta "
+            + "ORDER BY p.id, i.id", nativeQuery = true)
+    Stream<Object[]> streamFilasParaExportar(@Param("estados") Collection<String> estados,
+            @Param("desde") LocalDateTime desde, @Param("hasta") LocalDateTime hasta);
 }
@@ -0,0 +1,17 @@
+package com.example.keycloakdemo.repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public interface PedidoRepositoryCustom {
+
+    // Campos que admite ?fields= en el listado; cliente es {id, nombre, email} e items la lista de líneas
+    Set<String> CAMPOS = Set.of("id", "fechaPedido", "estado", "total", "cliente", "items");
+
+    /**
+     * Página de pedidos (id > after, hasta max filas) con sólo las columnas de los
+     * campos pedidos. El JOIN con cliente y la consulta de items sólo se hacen si se piden.
+     */
+    List<Map<String, Object>> findCampos(Set<String> campos, long after, int max);
+}
@@ -0,0 +1,97 @@
+package com.example.keycloakdemo.repository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+public class PedidoRepositoryImpl implements PedidoRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Map<String, Object>> findCampos(Set<String> campos, long after, int max) {
+        // los nombres de campo ya vienen validados contra CAMPOS: no hay entrada libre en la consulta
+        List<String> columnas = new ArrayList<>();
+        for (String campo : campos) {
+            switch (campo) {
+                case "cliente" -> {
+                    columnas.add("c.id");
+                    columnas.add("c.nombre");
+                    columnas.add("c.email");
+                }
+                case "items" -> {
+                    // se cargan aparte, todas las de la página en una consulta
+                }
+                default -> columnas.add("p." + campo);
+            }
+        }
+        String jpql = "SELECT " + String.join(", ", columnas) + " FROM Pedido p"
+                + (campos.contains("cliente") ? " JOIN p.cliente c" : "")
+                + " WHERE p.id > :after ORDER BY p.id";
+
+        List<Object[]> filas = entityManager.createQuery(jpql, Object[].class)
+                .setParameter("after", after)
+                .setMaxResults(max)
+                .getResultList();
+
+        List<Map<String, Object>> resultado = new ArrayList<>(filas.size());
+        for (Object[] fila : filas) {
+            Map<String, Object> pedido = new LinkedHashMap<>();
+            int i = 0;
+            for (String campo : campos) {
+                switch (campo) {
+                    case "cliente" -> {
+                        Map<String, Object> cliente = new LinkedHashMap<>();
+                        cliente.put("id", fila[i++]);
+                        cliente.put("nombre", fila[i++]);
+                        cliente.put("email", fila[i++]);
+                        pedido.put("cliente", cliente);
+                    }
+                    case "items" -> pedido.put("items", new ArrayList<Map<String, Object>>());
+                    default -> pedido.put(campo, fila[i++]);
+                }
+            }
+            resultado.add(pedido);
+        }
+
+        if (campos.contains("items") && !resultado.isEmpty()) {
+            anadirItems(resultado);
+        }
+        return resultado;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void anadirItems(List<Map<String, Object>> pedidos) {
+        Map<Long, Map<String, Object>> porId = pedidos.stream()
+                .collect(Collectors.toMap(p -> (Long) p.get("id"), p -> p));
+
+        List<Object[]> items = entityManager.createQuery(
+                "SELECT i.pedido.id, i.id, pr.id, pr.nombre, i.cantidad, i.precioUnitario, i.subtotal "
+                        + "FROM PedidoItem i JOIN i.producto pr WHERE i.pedido.id IN :ids ORDER BY i.pedido.id, i.id",
+                Object[].class)
+                .setParameter("ids", porId.keySet())
+                .getResultList();
+
+        for (Object[] fila : items) {
+            Map<String, Object> producto = new LinkedHashMap<>();
+            producto.put("id", fila[2]);
+            producto.put("nombre", fila[3]);
+
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", fila[1]);
+            item.put("producto", producto);
+            item.put("cantidad", fila[4]);
+            item.put("precioUnitario", fila[5]);
+            item.put("subtotal", fila[6]);
+
+            ((List<Map<String, Object>>) porId.get((Long) fila[0]).get("items")).add(item);
+        }
+    }
+}
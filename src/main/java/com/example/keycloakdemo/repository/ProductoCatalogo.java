@@ -0,0 +1,18 @@
+package com.example.keycloakdemo.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * Fila de catálogo: las columnas de producto y categoría que usa ProductoResponseDTO,
+ * leídas con una expresión constructora (sin entidades gestionadas).
+ */
+public record ProductoCatalogo(
+        Long id,
+        String nombre,
+        String descripcion,
+        BigDecimal precio,
+        Integer stock,
+        Long categoriaId,
+        String categoriaNombre,
+        Long version) {
+}
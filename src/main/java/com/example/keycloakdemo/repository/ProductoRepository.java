@@ -1,14 +1,93 @@
 package com.example.keycloakdemo.repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.example.keycloakdemo.model.Producto;
 
+import jakarta.persistence.LockModeType;
+
 @Repository
-public interface ProductoRepository extends JpaRepository<Producto, Long> {
+public interface ProductoRepository extends JpaRepository<Producto, Long>, ProductoRepositoryCustom {
     List<Producto> findByCategoriaId(Long categoriaId);
-    List<Producto> findByNombreContainingIgnoreCase(String nombre);
+
+    // [categoriaId, número de productos] de las categorías indicadas
+    @Query("SELECT p.categoria.id, COUNT(p) FROM Producto p WHERE p.categoria.id IN :ids GROUP BY p.categoria.id")
+    List<Object[]> contarPorCategoria(@Param("ids") Collection<Long> ids);
+
+    // [id, nombre, precio, stock, categoria_id] de los primeros max productos (por ID) de cada categoría
+    @Query(value = "SELECT id, nombre, precio, stock, categoria_id FROM ("
+            + "SELECT p.id, p.nombre, p.precio, p.stock, p.categoria_id, "
+            + "ROW_NUMBER() OVER (PARTITION BY p.categoria_id ORDER BY p.id) AS fila "
+            + "FROM producto p WHERE p.categoria_id IN (:ids)) t "
+            + "WHERE t.fila <= :max ORDER BY t.categoria_id, t.id", nativeQuery = true)
+    List<Object[]> findPrimerosPorCategoria(@Param("ids") Collection<Long> ids, @Param("max") int max);
+
+    // Paginación por cursor: los IDs de la página; el contenido sale de la caché del catálogo
+    @Query("SELECT p.id FROM Producto p WHERE p.id > :id ORDER BY p.id")
+    List<Long> findIdsByIdGreaterThan(@Param("id") Long id, Limit limit);
+
+    // Catálogo de sólo lectura: proyección con la categoría en un único JOIN
+    @Query("SELECT new com.example.keycloakdemo.repository.ProductoCatalogo("
+            + "p.id, p.nombre, p.descripcion, p.precio, p.stock, c.id, c.nombre, p.version) "
+            + "FROM Producto p LEFT JOIN p.categoria c WHERE p.id IN :ids")
+    List<ProductoCatalogo> findCatalogoByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT new com.example.keycloakdemo.repository.ProductoCatalogo("
+            + "p.id, p.nombre, p.descripcion, p.precio, p.stock, c.id, c.nombre, p.version) "
+            + "FROM Producto p LEFT JOIN p.categoria c WHERE p.id = :id")
+    Optional<ProductoCatalogo> findCatalogoById(@Param("id") Long id);
+
+    // [id, nombre, descripcion] para el índice de búsqueda (IndiceProductos)
+    @Query("SELECT p.id, p.nombre, p.descripcion FROM Producto p WHERE p.id > :id ORDER BY p.id")
+    List<Object[]> findTextosByIdGreaterThan(@Param("id") Long id, Limit limit);
+
+    @Query("SELECT p.id, p.nombre, p.descripcion FROM Producto p WHERE p.id IN :ids")
+    List<Object[]> findTextosByIdIn(@Param("ids") Collection<Long> ids);
+
+    // [id, categoriaId], para llevar a categoria_resumen cambios de stock hechos por ID de producto
+    @Query("SELECT p.id, p.categoria.id FROM Producto p WHERE p.id IN :ids")
+    List<Object[]> findCategoriaIdsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Sólo la versión, para responder 304 a If-None-Match sin leer el producto
+    @Query("SELECT p.version FROM Producto p WHERE p.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    // El nombre de la categoría va dentro del producto: al cambiarlo cambia también su ETag
+    @Modifying
+    @Query("UPDATE Producto p SET p.version = p.version + 1 WHERE p.categoria.id = :categoriaId")
+    int subirVersionPorCategoria(@Param("categoriaId") Long categoriaId);
+
+    /**
+     * Comprueba y descuenta stock en una única sentencia.
+     * Devuelve 0 si el producto no existe o no tiene stock suficiente.
+     */
+    @Modifying
+    @Query("UPDATE Producto p SET p.stock = p.stock - :cantidad, p.version = p.version + 1 "
+            + "WHERE p.id = :id AND p.stock >= :cantidad")
+    int descontarStock(@Param("id") Long id, @Param("cantidad") int cantidad);
+
+    // Bloquea las filas en orden de ID para evitar interbloqueos entre lotes concurrentes
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Producto p WHERE p.id IN :ids ORDER BY p.id")
+    List<Producto> findAllByIdParaActualizar(@Param("ids") Collection<Long> ids);
+
+    // Descuento sin condición: lo usa el volcado de reservas de venta flash, ya validadas en memoria
+    @Modifying
+    @Query("UPDATE Producto p SET p.stock = p.stock - :cantidad, p.version = p.version + 1 WHERE p.id = :id")
+    int restarStock(@Param("id") Long id, @Param("cantidad") int cantidad);
+
+    // Stock aún no comprometido: stock en BD menos reservas flash pendientes de volcar (una sola lectura)
+    @Query("SELECT p.stock - COALESCE((SELECT SUM(r.cantidad) FROM ReservaStock r WHERE r.productoId = p.id), 0) "
+            + "FROM Producto p WHERE p.id = :id")
+    Optional<Long> findStockDisponible(@Param("id") Long id);
 }
@@ -0,0 +1,40 @@
+package com.example.keycloakdemo.repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public interface ProductoRepositoryCustom {
+
+    // Campos que admite ?fields= en el catálogo; categoria es el objeto {id, nombre}
+    Set<String> CAMPOS = Set.of("id", "nombre", "descripcion", "precio", "stock", "categoria");
+
+    /**
+     * Suma a cada producto la cantidad indicada (negativa para restar) con un
+     * único UPDATE ... CASE por cada bloque de productos.
+     */
+    void sumarStock(Map<Long, Integer> cantidadesPorProducto);
+
+    /**
+     * Página del catálogo (id > after, hasta max filas) con sólo las columnas de
+     * los campos pedidos; el JOIN con categoría sólo se hace si se pide.
+     */
+    List<Map<String, Object>> findCampos(Set<String> campos, long after, int max);
+
+    // IDs de los productos que cumplen el filtro, id > after, hasta max
+    List<Long> findIdsFiltrados(FiltroProductos filtro, long after, int max);
+
+    /**
+     * Faceta de categorías: [categoriaId, número de productos] con todas las
+     * condiciones del filtro menos la de categoría, para poder cambiar de una a otra.
+     */
+    List<Object[]> contarPorCategoria(FiltroProductos filtro);
+
+    /**
+     * Faceta de precio: número de productos en cada tramo [limites[i-1], limites[i])
+     * (el primero desde 0 y el último sin tope), con todas las condiciones menos
+     * las de precio. Una sola consulta con un COUNT(CASE ...) por tramo.
+     */
+    long[] contarPorTramoPrecio(FiltroProductos filtro, List<BigDecimal> limites);
+}
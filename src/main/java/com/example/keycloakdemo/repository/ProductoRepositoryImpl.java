@@ -0,0 +1,186 @@
+package com.example.keycloakdemo.repository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.example.keycloakdemo.model.Producto;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+
+public class ProductoRepositoryImpl implements ProductoRepositoryCustom {
+
+    private static final int PRODUCTOS_POR_SENTENCIA = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public void sumarStock(Map<Long, Integer> cantidadesPorProducto) {
+        List<Map.Entry<Long, Integer>> entradas = new ArrayList<>(cantidadesPorProducto.entrySet());
+        for (int desde = 0; desde < entradas.size(); desde += PRODUCTOS_POR_SENTENCIA) {
+            List<Map.Entry<Long, Integer>> bloque =
+                    entradas.subList(desde, Math.min(desde + PRODUCTOS_POR_SENTENCIA, entradas.size()));
+
+            // UPDATE producto SET stock = stock + CASE id WHEN ? THEN ? ... END, version = version + 1 WHERE id IN (?, ...)
+            StringBuilder sql = new StringBuilder("UPDATE producto SET stock = stock + CASE id");
+            for (int i = 0; i < bloque.size(); i++) {
+                sql.append(" WHEN ?").append(2 * i + 1).append(" THEN ?").append(2 * i + 2);
+            }
+            sql.append(" ELSE 0 END, version = version + 1 WHERE id IN (");
+            for (int i = 0; i < bloque.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?").append(2 * i + 1);
+            }
+            sql.append(")");
+
+            Query query = entityManager.createNativeQuery(sql.toString());
+            for (int i = 0; i < bloque.size(); i++) {
+                query.setParameter(2 * i + 1, bloque.get(i).getKey());
+                query.setParameter(2 * i + 2, bloque.get(i).getValue());
+            }
+            query.executeUpdate();
+        }
+    }
+
+    @Override
+    public List<Map<String, Object>> findCampos(Set<String> campos, long after, int max) {
+        // los nombres de campo ya vienen validados contra CAMPOS: no hay entrada libre en la consulta
+        List<String> columnas = new ArrayList<>();
+        for (String campo : campos) {
+            if (campo.equals("categoria")) {
+                columnas.add("c.id");
+                columnas.add("c.nombre");
+            } else {
+                columnas.add("p." + campo);
+            }
+        }
+        String jpql = "SELECT " + String.join(", ", columnas) + " FROM Producto p"
+                + (campos.contains("categoria") ? " LEFT JOIN p.categoria c" : "")
+                + " WHERE p.id > :after ORDER BY p.id";
+
+        List<Object[]> filas = entityManager.createQuery(jpql, Object[].class)
+                .setParameter("after", after)
+                .setMaxResults(max)
+                .getResultList();
+
+        List<Map<String, Object>> resultado = new ArrayList<>(filas.size());
+        for (Object[] fila : filas) {
+            Map<String, Object> producto = new LinkedHashMap<>();
+            int i = 0;
+            for (String campo : campos) {
+                if (campo.equals("categoria")) {
+                    Object categoriaId = fila[i++];
+                    Object categoriaNombre = fila[i++];
+                    Map<String, Object> categoria = null;
+                    if (categoriaId != null) {
+                        categoria = new LinkedHashMap<>();
+                        categoria.put("id", categoriaId);
+                        categoria.put("nombre", categoriaNombre);
+                    }
+                    producto.put("categoria", categoria);
+                } else {
+                    producto.put(campo, fila[i++]);
+                }
+            }
+            resultado.add(producto);
+        }
+        return resultado;
+    }
+
+    @Override
+    public List<Long> findIdsFiltrados(FiltroProductos filtro, long after, int max) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Producto> p = query.from(Producto.class);
+
+        List<Predicate> condiciones = condiciones(cb, p, filtro, true, true);
+        condiciones.add(cb.greaterThan(p.<Long>get("id"), after));
+        query.select(p.<Long>get("id"))
+                .where(condiciones.toArray(Predicate[]::new))
+                .orderBy(cb.asc(p.get("id")));
+
+        return entityManager.createQuery(query).setMaxResults(max).getResultList();
+    }
+
+    @Override
+    public List<Object[]> contarPorCategoria(FiltroProductos filtro) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+        Root<Producto> p = query.from(Producto.class);
+
+        // la FK basta: sin JOIN con categoria
+        Path<Long> categoriaId = p.get("categoria").get("id");
+        query.multiselect(categoriaId, cb.count(p))
+                .where(condiciones(cb, p, filtro, false, true).toArray(Predicate[]::new))
+                .groupBy(categoriaId);
+
+        return entityManager.createQuery(query).getResultList();
+    }
+
+    @Override
+    public long[] contarPorTramoPrecio(FiltroProductos filtro, List<BigDecimal> limites) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+        Root<Producto> p = query.from(Producto.class);
+        Path<BigDecimal> precio = p.get("precio");
+
+        // COUNT(CASE WHEN <en el tramo> THEN id END): COUNT ignora los NULL de fuera del tramo
+        List<Selection<?>> recuentos = new ArrayList<>();
+        for (int i = 0; i <= limites.size(); i++) {
+            List<Predicate> enTramo = new ArrayList<>();
+            if (i > 0) {
+                enTramo.add(cb.greaterThanOrEqualTo(precio, limites.get(i - 1)));
+            }
+            if (i < limites.size()) {
+                enTramo.add(cb.lessThan(precio, limites.get(i)));
+            }
+            Expression<Long> id = cb.<Long>selectCase()
+                    .when(cb.and(enTramo.toArray(Predicate[]::new)), p.<Long>get("id"))
+                    .otherwise(cb.nullLiteral(Long.class));
+            recuentos.add(cb.count(id));
+        }
+        query.multiselect(recuentos)
+                .where(condiciones(cb, p, filtro, true, false).toArray(Predicate[]::new));
+
+        Object[] fila = entityManager.createQuery(query).getSingleResult();
+        long[] resultado = new long[fila.length];
+        for (int i = 0; i < fila.length; i++) {
+            resultado[i] = fila[i] != null ? ((Number) fila[i]).longValue() : 0;
+        }
+        return resultado;
+    }
+
+    // Condiciones del filtro; las facetas dejan fuera la suya (porCategoria / porPrecio)
+    private List<Predicate> condiciones(CriteriaBuilder cb, Root<Producto> p, FiltroProductos filtro,
+            boolean porCategoria, boolean porPrecio) {
+        List<Predicate> condiciones = new ArrayList<>();
+        if (porCategoria && filtro.categoriaId() != null) {
+            condiciones.add(cb.equal(p.get("categoria").get("id"), filtro.categoriaId()));
+        }
+        if (porPrecio && filtro.precioMin() != null) {
+            condiciones.add(cb.greaterThanOrEqualTo(p.<BigDecimal>get("precio"), filtro.precioMin()));
+        }
+        if (porPrecio && filtro.precioMax() != null) {
+            condiciones.add(cb.lessThanOrEqualTo(p.<BigDecimal>get("precio"), filtro.precioMax()));
+        }
+        if (filtro.enStock()) {
+            condiciones.add(cb.greaterThan(p.<Integer>get("stock"), 0));
+        }
+        if (filtro.ids() != null) {
+            condiciones.add(p.get("id").in(filtro.ids()));
+        }
+        return condiciones;
+    }
+}
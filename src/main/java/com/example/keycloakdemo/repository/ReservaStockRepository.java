@@ -0,0 +1,20 @@
+package com.example.keycloakdemo.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.stereotype.Repository;
+
+import com.example.keycloakdemo.model.ReservaStock;
+
+import jakarta.persistence.LockModeType;
+
+@Repository
+public interface ReservaStockRepository extends JpaRepository<ReservaStock, Long> {
+
+    // Bloqueo para que dos volcados concurrentes no apliquen la misma reserva dos veces
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<ReservaStock> findAllByOrderByIdAsc(Limit limit);
+}
@@ -0,0 +1,61 @@
+package com.example.keycloakdemo.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.keycloakdemo.model.ResumenCategoria;
+
+import jakarta.persistence.LockModeType;
+
+@Repository
+public interface ResumenCategoriaRepository extends JpaRepository<ResumenCategoria, Long> {
+
+    // Paginación por cursor sobre el ID de categoría
+    List<ResumenCategoria> findByCategoriaIdGreaterThanOrderByCategoriaIdAsc(Long categoriaId, Limit limit);
+
+    // Suma de deltas; devuelve 0 si la categoría aún no tiene fila
+    @Modifying
+    @Query("UPDATE ResumenCategoria r SET r.numeroProductos = r.numeroProductos + :productos, "
+            + "r.stockTotal = r.stockTotal + :stock WHERE r.categoriaId = :categoriaId")
+    int sumar(@Param("categoriaId") Long categoriaId, @Param("productos") long productos, @Param("stock") long stock);
+
+    // Precio mínimo y máximo: dos lecturas de extremo sobre idx_producto_categoria_precio
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ResumenCategoria r SET "
+            + "r.precioMinimo = (SELECT MIN(p.precio) FROM Producto p WHERE p.categoria.id = :categoriaId), "
+            + "r.precioMaximo = (SELECT MAX(p.precio) FROM Producto p WHERE p.categoria.id = :categoriaId) "
+            + "WHERE r.categoriaId = :categoriaId")
+    int recalcularPrecios(@Param("categoriaId") Long categoriaId);
+
+    // Para la reconstrucción: bloquea los resúmenes en orden de ID, como los hace el mantenimiento
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM ResumenCategoria r ORDER BY r.categoriaId")
+    List<ResumenCategoria> findAllParaActualizar();
+
+    // [categoriaId, número de productos, precio mínimo, precio máximo, stock total] calculados sobre producto
+    @Query("SELECT p.categoria.id, COUNT(p), MIN(p.precio), MAX(p.precio), COALESCE(SUM(p.stock), 0) "
+            + "FROM Producto p WHERE p.categoria.id IS NOT NULL GROUP BY p.categoria.id")
+    List<Object[]> calcularTodos();
+
+    @Query("SELECT COUNT(p), MIN(p.precio), MAX(p.precio), COALESCE(SUM(p.stock), 0) "
+            + "FROM Producto p WHERE p.categoria.id = :categoriaId")
+    List<Object[]> calcular(@Param("categoriaId") Long categoriaId);
+
+    @Modifying
+    @Query(value = "INSERT INTO categoria_resumen (categoria_id, numero_productos, stock_total) "
+            + "SELECT c.id, 0, 0 FROM categoria c "
+            + "WHERE NOT EXISTS (SELECT 1 FROM categoria_resumen r WHERE r.categoria_id = c.id)", nativeQuery = true)
+    int insertarFaltantes();
+
+    @Modifying
+    @Query(value = "DELETE FROM categoria_resumen "
+            + "WHERE NOT EXISTS (SELECT 1 FROM categoria c WHERE c.id = categoria_resumen.categoria_id)", nativeQuery = true)
+    int borrarHuerfanos();
+}
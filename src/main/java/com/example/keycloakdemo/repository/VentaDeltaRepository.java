@@ -0,0 +1,36 @@
+package com.example.keycloakdemo.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.keycloakdemo.model.VentaDelta;
+
+import jakarta.persistence.LockModeType;
+
+@Repository
+public interface VentaDeltaRepository extends JpaRepository<VentaDelta, Long> {
+
+    // Bloqueo para que dos compactaciones concurrentes no sumen el mismo apunte dos veces
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<VentaDelta> findAllByOrderByIdAsc(Limit limit);
+
+    @Query("SELECT d.id FROM VentaDelta d WHERE d.dia = :dia")
+    List<Long> findIdsByDia(@Param("dia") LocalDate dia);
+
+    // Apuntes aún sin compactar: [dia, productoId, ingresos, unidades, pedidos]
+    @Query("SELECT d.dia, d.productoId, SUM(d.ingresos), SUM(d.unidades), SUM(d.pedidos) FROM VentaDelta d "
+            + "WHERE d.dia BETWEEN :desde AND :hasta GROUP BY d.dia, d.productoId")
+    List<Object[]> sumarPorProducto(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+
+    // [dia, categoriaId, ingresos, unidades, pedidos]
+    @Query("SELECT d.dia, d.categoriaId, SUM(d.ingresos), SUM(d.unidades), SUM(d.pedidosCategoria) FROM VentaDelta d "
+            + "WHERE d.dia BETWEEN :desde AND :hasta AND d.categoriaId IS NOT NULL GROUP BY d.dia, d.categoriaId")
+    List<Object[]> sumarPorCategoria(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+}
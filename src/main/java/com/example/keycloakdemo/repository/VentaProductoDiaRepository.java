@@ -0,0 +1,32 @@
+package com.example.keycloakdemo.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.keycloakdemo.model.VentaProductoDia;
+
+@Repository
+public interface VentaProductoDiaRepository extends JpaRepository<VentaProductoDia, Long> {
+
+    List<VentaProductoDia> findByDiaBetweenOrderByDiaAscProductoIdAsc(LocalDate desde, LocalDate hasta);
+
+    List<VentaProductoDia> findByProductoIdAndDiaBetweenOrderByDiaAsc(Long productoId, LocalDate desde, LocalDate hasta);
+
+    // Suma de apuntes compactados; devuelve 0 si el día aún no tiene fila
+    @Modifying
+    @Query("UPDATE VentaProductoDia v SET v.ingresos = v.ingresos + :ingresos, v.unidades = v.unidades + :unidades, "
+            + "v.pedidos = v.pedidos + :pedidos WHERE v.dia = :dia AND v.productoId = :productoId")
+    int sumar(@Param("dia") LocalDate dia, @Param("productoId") Long productoId,
+            @Param("ingresos") BigDecimal ingresos, @Param("unidades") long unidades, @Param("pedidos") long pedidos);
+
+    @Modifying
+    @Query("DELETE FROM VentaProductoDia v WHERE v.dia = :dia")
+    int borrarDia(@Param("dia") LocalDate dia);
+}
@@ -0,0 +1,522 @@
+package com.example.keycloakdemo.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongFunction;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.keycloakdemo.dto.GastoClienteDTO;
+import com.example.keycloakdemo.dto.PedidosPorEstadoDTO;
+import com.example.keycloakdemo.dto.TramoPedidosDTO;
+import com.example.keycloakdemo.event.PedidoCambiadoEvent;
+import com.example.keycloakdemo.model.EstadoPedido;
+import com.example.keycloakdemo.repository.PedidoArchivadoRepository;
+import com.example.keycloakdemo.repository.PedidoRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Copia en memoria de los pedidos (activos y archivados) en columnas de tipos
+ * primitivos, para los paneles de administración: unos 37 bytes por pedido en
+ * lugar de una entidad, y consultas que recorren las columnas en paralelo con
+ * fork/join sin tocar la base de datos.
+ *
+ * Las filas están ordenadas por ID. Se carga en segundo plano al arrancar; los
+ * pedidos creados o que cambian de estado llegan por PedidoCambiadoEvent a una
+ * cola sin bloqueos, y se aplican antes de cada consulta y periódicamente.
+ * Si la carga falla se reintenta con esperas crecientes; mientras no hay carga
+ * en curso los cambios no se encolan, así la cola no crece sin límite.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AnaliticaPedidosService {
+
+    private static final int LOTE_CARGA = 10_000;
+    // Filas que recorre cada tarea hoja del fork/join
+    private static final int FILAS_POR_TAREA = 1 << 16;
+    private static final EstadoPedido[] ESTADOS = EstadoPedido.values();
+    private static final byte CANCELADO = (byte) EstadoPedido.CANCELADO.ordinal();
+    private static final long ESPERA_MAXIMA_REINTENTO_MS = 300_000;
+
+    private final PedidoRepository pedidoRepository;
+    private final PedidoArchivadoRepository pedidoArchivadoRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Queue<PedidoCambiadoEvent> pendientes = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger enCola = new AtomicInteger();
+    private volatile boolean cargando;
+    private volatile boolean cargado;
+
+    // Cambios que se guardan como mucho mientras dura la carga; si se supera, la carga se repite
+    @Value("${analitica.pedidos.max-pendientes-carga:100000}")
+    private int maxPendientesCarga;
+
+    // Columnas; las posiciones [0, filas) son válidas
+    private long[] ids = new long[0];
+    private long[] fechas = new long[0];  // segundos de fechaPedido, tomada como UTC
+    private long[] clientes = new long[0];
+    private long[] totales = new long[0];  // céntimos
+    private int[] unidades = new int[0];
+    private byte[] estados = new byte[0];  // EstadoPedido.ordinal()
+    private int filas;
+
+    // Recorrido de un rango de filas que acumula en un resultado parcial de tipo R
+    private interface Consulta<R> {
+        R nuevo();
+
+        void acumular(R parcial, int inicio, int fin);
+
+        R combinar(R a, R b);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciarCarga() {
+        Thread.ofVirtual().name("analitica-pedidos").start(this::cargar);
+    }
+
+    // Sin carga en curso ni hecha no se guarda nada: el siguiente intento ya leerá el cambio de la BD
+    @TransactionalEventListener
+    public void onPedidoCambiado(PedidoCambiadoEvent cambio) {
+        if (cargado || cargando) {
+            pendientes.add(cambio);
+            enCola.incrementAndGet();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${analitica.pedidos.intervalo-ms:1000}")
+    public void aplicarPendientes() {
+        if (!cargado || pendientes.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            PedidoCambiadoEvent cambio;
+            while ((cambio = pendientes.poll()) != null) {
+                enCola.decrementAndGet();
+                aplicar(cambio);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Número de pedidos e ingresos por estado en [desde, hasta]; sin fechas, de todo el histórico
+    public List<PedidosPorEstadoDTO> porEstado(LocalDate desde, LocalDate hasta) {
+        long inicio = segundosDesde(desde);
+        long fin = segundosHasta(hasta);
+
+        // parcial: [pedidos de cada estado..., céntimos de cada estado...]
+        long[] total = escanear(new Consulta<long[]>() {
+            @Override
+            public long[] nuevo() {
+                return new long[ESTADOS.length * 2];
+            }
+
+            @Override
+            public void acumular(long[] parcial, int desdeFila, int hastaFila) {
+                for (int i = desdeFila; i < hastaFila; i++) {
+                    if (fechas[i] >= inicio && fechas[i] < fin) {
+                        parcial[estados[i]]++;
+                        parcial[ESTADOS.length + estados[i]] += totales[i];
+                    }
+                }
+            }
+
+            @Override
+            public long[] combinar(long[] a, long[] b) {
+                for (int i = 0; i < a.length; i++) {
+                    a[i] += b[i];
+                }
+                return a;
+            }
+        });
+
+        List<PedidosPorEstadoDTO> resultado = new ArrayList<>();
+        for (EstadoPedido estado : ESTADOS) {
+            PedidosPorEstadoDTO dto = new PedidosPorEstadoDTO();
+            dto.setEstado(estado);
+            dto.setPedidos(total[estado.ordinal()]);
+            dto.setIngresos(BigDecimal.valueOf(total[ESTADOS.length + estado.ordinal()], 2));
+            resultado.add(dto);
+        }
+        return resultado;
+    }
+
+    /**
+     * Histograma de unidades por pedido, sin cancelados. limites son los topes
+     * (incluidos) de cada tramo: 1,2,5 da 1, 2, 3-5 y más de 5.
+     */
+    public List<TramoPedidosDTO> histogramaUnidades(int[] limites, LocalDate desde, LocalDate hasta) {
+        int[] topes = Arrays.stream(limites).sorted().distinct().toArray();
+        if (topes.length == 0 || topes[0] < 1) {
+            throw new IllegalArgumentException("Los límites de los tramos deben ser mayores que 0");
+        }
+        long inicio = segundosDesde(desde);
+        long fin = segundosHasta(hasta);
+
+        long[] recuentos = escanear(new Consulta<long[]>() {
+            @Override
+            public long[] nuevo() {
+                return new long[topes.length + 1];
+            }
+
+            @Override
+            public void acumular(long[] parcial, int desdeFila, int hastaFila) {
+                for (int i = desdeFila; i < hastaFila; i++) {
+                    if (estados[i] != CANCELADO && fechas[i] >= inicio && fechas[i] < fin) {
+                        int tramo = Arrays.binarySearch(topes, unidades[i]);
+                        parcial[tramo >= 0 ? tramo : -tramo - 1]++;
+                    }
+                }
+            }
+
+            @Override
+            public long[] combinar(long[] a, long[] b) {
+                for (int i = 0; i < a.length; i++) {
+                    a[i] += b[i];
+                }
+                return a;
+            }
+        });
+
+        List<TramoPedidosDTO> resultado = new ArrayList<>();
+        for (int i = 0; i < recuentos.length; i++) {
+            TramoPedidosDTO tramo = new TramoPedidosDTO();
+            tramo.setDesde(i > 0 ? topes[i - 1] + 1 : 0);
+            tramo.setHasta(i < topes.length ? topes[i] : null);
+            tramo.setPedidos(recuentos[i]);
+            resultado.add(tramo);
+        }
+        return resultado;
+    }
+
+    // Los max clientes que más han gastado en [desde, hasta], sin pedidos cancelados
+    public List<GastoClienteDTO> clientesPorGasto(int max, LocalDate desde, LocalDate hasta) {
+        long inicio = segundosDesde(desde);
+        long fin = segundosHasta(hasta);
+
+        GastoPorCliente gastos = escanear(new Consulta<GastoPorCliente>() {
+            @Override
+            public GastoPorCliente nuevo() {
+                return new GastoPorCliente();
+            }
+
+            @Override
+            public void acumular(GastoPorCliente parcial, int desdeFila, int hastaFila) {
+                for (int i = desdeFila; i < hastaFila; i++) {
+                    if (estados[i] != CANCELADO && fechas[i] >= inicio && fechas[i] < fin) {
+                        parcial.sumar(clientes[i], totales[i], 1);
+                    }
+                }
+            }
+
+            @Override
+            public GastoPorCliente combinar(GastoPorCliente a, GastoPorCliente b) {
+                return a.fusionar(b);
+            }
+        });
+
+        // montículo de los max mayores: la cima es el menor de ellos
+        PriorityQueue<Integer> mejores = new PriorityQueue<>(
+                Comparator.comparingLong((Integer posicion) -> gastos.gastos[posicion])
+                        .thenComparingLong(posicion -> -gastos.claves[posicion]));
+        for (int posicion = 0; posicion < gastos.claves.length; posicion++) {
+            if (gastos.usadas[posicion]) {
+                mejores.add(posicion);
+                if (mejores.size() > max) {
+                    mejores.poll();
+                }
+            }
+        }
+
+        List<GastoClienteDTO> resultado = new ArrayList<>();
+        while (!mejores.isEmpty()) {
+            int posicion = mejores.poll();
+            GastoClienteDTO dto = new GastoClienteDTO();
+            dto.setClienteId(gastos.claves[posicion]);
+            dto.setPedidos(gastos.pedidos[posicion]);
+            dto.setGasto(BigDecimal.valueOf(gastos.gastos[posicion], 2));
+            resultado.add(dto);
+        }
+        return resultado.reversed();
+    }
+
+    /**
+     * Aplica los cambios pendientes y recorre las filas en paralelo. El read lock
+     * lo mantiene el hilo que espera el resultado; las tareas ven las columnas
+     * publicadas por él al enviarlas al pool.
+     */
+    private <R> R escanear(Consulta<R> consulta) {
+        if (!cargado) {
+            throw new IllegalStateException("Las analíticas de pedidos aún se están cargando, vuelva a intentarlo");
+        }
+        aplicarPendientes();
+        lock.readLock().lock();
+        try {
+            return ForkJoinPool.commonPool().invoke(new Escaneo<>(consulta, 0, filas));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static final class Escaneo<R> extends RecursiveTask<R> {
+        private final Consulta<R> consulta;
+        private final int inicio;
+        private final int fin;
+
+        Escaneo(Consulta<R> consulta, int inicio, int fin) {
+            this.consulta = consulta;
+            this.inicio = inicio;
+            this.fin = fin;
+        }
+
+        @Override
+        protected R compute() {
+            if (fin - inicio <= FILAS_POR_TAREA) {
+                R parcial = consulta.nuevo();
+                consulta.acumular(parcial, inicio, fin);
+                return parcial;
+            }
+            int medio = (inicio + fin) >>> 1;
+            Escaneo<R> izquierda = new Escaneo<>(consulta, inicio, medio);
+            izquierda.fork();
+            R derecha = new Escaneo<>(consulta, medio, fin).compute();
+            return consulta.combinar(izquierda.join(), derecha);
+        }
+    }
+
+    // Carga inicial, con reintentos: la espera se dobla en cada fallo hasta un máximo de 5 minutos
+    private void cargar() {
+        long espera = 1000;
+        while (true) {
+            cargando = true;
+            try {
+                cargarUnaVez();
+                cargado = true;
+                cargando = false;
+                aplicarPendientes();
+                return;
+            } catch (RuntimeException e) {
+                cargando = false;
+                pendientes.clear();
+                enCola.set(0);
+                log.error("No se pudieron cargar las analíticas de pedidos, se reintenta en {} ms: {}",
+                        espera, e.getMessage(), e);
+            }
+            try {
+                Thread.sleep(espera);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            espera = Math.min(espera * 2, ESPERA_MAXIMA_REINTENTO_MS);
+        }
+    }
+
+    // pedidos y pedidos_archivo por páginas de ID, mezclados en orden
+    private void cargarUnaVez() {
+        long inicio = System.nanoTime();
+        filas = 0;
+        reservar((int) Math.min(Integer.MAX_VALUE - 8,
+                (pedidoRepository.count() + pedidoArchivadoRepository.count()) * 9 / 8));
+
+        Fuente activos = new Fuente(ultimo ->
+                pedidoRepository.findDatosAnaliticaByIdGreaterThan(ultimo, Limit.of(LOTE_CARGA)));
+        Fuente archivados = new Fuente(ultimo ->
+                pedidoArchivadoRepository.findDatosAnaliticaByIdGreaterThan(ultimo, Limit.of(LOTE_CARGA)));
+
+        // fila: [id, clienteId, fechaPedido, estado, total, unidades]
+        Object[] activo = activos.siguiente();
+        Object[] archivado = archivados.siguiente();
+        while (activo != null || archivado != null) {
+            if (enCola.get() > maxPendientesCarga) {
+                throw new IllegalStateException("Más de " + maxPendientesCarga + " cambios pendientes durante la carga");
+            }
+            Object[] fila;
+            if (archivado == null || (activo != null && (Long) activo[0] < (Long) archivado[0])) {
+                fila = activo;
+                activo = activos.siguiente();
+            } else {
+                // un pedido archivado durante la carga puede aparecer en las dos: vale el archivado
+                if (activo != null && activo[0].equals(archivado[0])) {
+                    activo = activos.siguiente();
+                }
+                fila = archivado;
+                archivado = archivados.siguiente();
+            }
+            anadir(filas, (Long) fila[0], (Long) fila[1], (LocalDateTime) fila[2], (EstadoPedido) fila[3],
+                    (BigDecimal) fila[4], ((Number) fila[5]).intValue());
+        }
+        log.info("Analíticas de pedidos cargadas: {} pedidos (~{} MB) en {} ms",
+                filas, (long) ids.length * 37 / (1024 * 1024), (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    // Pedido nuevo: se inserta en su posición (llegan casi en orden); existente: cambia estado y total
+    private void aplicar(PedidoCambiadoEvent cambio) {
+        int posicion = Arrays.binarySearch(ids, 0, filas, cambio.pedidoId());
+        if (posicion >= 0) {
+            estados[posicion] = (byte) cambio.estado().ordinal();
+            totales[posicion] = centimos(cambio.total());
+            return;
+        }
+        anadir(-posicion - 1, cambio.pedidoId(), cambio.clienteId(), cambio.fechaPedido(), cambio.estado(),
+                cambio.total(), cambio.unidades());
+    }
+
+    private void anadir(int posicion, long id, long clienteId, LocalDateTime fecha, EstadoPedido estado,
+            BigDecimal total, int numeroUnidades) {
+        if (filas == ids.length) {
+            reservar(filas + (filas >> 1) + 1024);
+        }
+        if (posicion < filas) {
+            int desplazar = filas - posicion;
+            System.arraycopy(ids, posicion, ids, posicion + 1, desplazar);
+            System.arraycopy(fechas, posicion, fechas, posicion + 1, desplazar);
+            System.arraycopy(clientes, posicion, clientes, posicion + 1, desplazar);
+            System.arraycopy(totales, posicion, totales, posicion + 1, desplazar);
+            System.arraycopy(unidades, posicion, unidades, posicion + 1, desplazar);
+            System.arraycopy(estados, posicion, estados, posicion + 1, desplazar);
+        }
+        ids[posicion] = id;
+        fechas[posicion] = fecha.toEpochSecond(ZoneOffset.UTC);
+        clientes[posicion] = clienteId;
+        totales[posicion] = centimos(total);
+        unidades[posicion] = numeroUnidades;
+        estados[posicion] = (byte) estado.ordinal();
+        filas++;
+    }
+
+    private void reservar(int capacidad) {
+        if (capacidad <= ids.length) {
+            return;
+        }
+        ids = Arrays.copyOf(ids, capacidad);
+        fechas = Arrays.copyOf(fechas, capacidad);
+        clientes = Arrays.copyOf(clientes, capacidad);
+        totales = Arrays.copyOf(totales, capacidad);
+        unidades = Arrays.copyOf(unidades, capacidad);
+        estados = Arrays.copyOf(estados, capacidad);
+    }
+
+    private static long centimos(BigDecimal importe) {
+        return importe != null ? importe.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact() : 0;
+    }
+
+    private static long segundosDesde(LocalDate desde) {
+        return desde != null ? desde.atStartOfDay().toEpochSecond(ZoneOffset.UTC) : Long.MIN_VALUE;
+    }
+
+    // hasta es inclusivo: el límite es el comienzo del día siguiente
+    private static long segundosHasta(LocalDate hasta) {
+        return hasta != null ? hasta.plusDays(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC) : Long.MAX_VALUE;
+    }
+
+    // Lectura por páginas de una de las dos tablas, fila a fila
+    private static final class Fuente {
+        private final LongFunction<List<Object[]>> pagina;
+        private List<Object[]> filas = List.of();
+        private int posicion;
+        private long ultimo;
+        private boolean agotada;
+
+        Fuente(LongFunction<List<Object[]>> pagina) {
+            this.pagina = pagina;
+        }
+
+        Object[] siguiente() {
+            if (posicion == filas.size()) {
+                if (agotada) {
+                    return null;
+                }
+                filas = pagina.apply(ultimo);
+                posicion = 0;
+                agotada = filas.size() < LOTE_CARGA;
+                if (filas.isEmpty()) {
+                    return null;
+                }
+                ultimo = (Long) filas.get(filas.size() - 1)[0];
+            }
+            return filas.get(posicion++);
+        }
+    }
+
+    // Tabla hash de direccionamiento abierto clienteId -> (céntimos, pedidos), sin objetos por entrada
+    private static final class GastoPorCliente {
+        private long[] claves = new long[64];
+        private long[] gastos = new long[64];
+        private long[] pedidos = new long[64];
+        private boolean[] usadas = new boolean[64];
+        private int tamano;
+
+        void sumar(long cliente, long gasto, long numero) {
+            if (tamano * 2 >= claves.length) {
+                crecer();
+            }
+            int mascara = claves.length - 1;
+            int posicion = Long.hashCode(cliente * 0x9E3779B97F4A7C15L) & mascara;
+            while (usadas[posicion] && claves[posicion] != cliente) {
+                posicion = (posicion + 1) & mascara;
+            }
+            if (!usadas[posicion]) {
+                usadas[posicion] = true;
+                claves[posicion] = cliente;
+                tamano++;
+            }
+            gastos[posicion] += gasto;
+            pedidos[posicion] += numero;
+        }
+
+        // Vuelca la menor en la mayor
+        GastoPorCliente fusionar(GastoPorCliente otra) {
+            GastoPorCliente mayor = tamano >= otra.tamano ? this : otra;
+            GastoPorCliente menor = mayor == this ? otra : this;
+            for (int i = 0; i < menor.claves.length; i++) {
+                if (menor.usadas[i]) {
+                    mayor.sumar(menor.claves[i], menor.gastos[i], menor.pedidos[i]);
+                }
+            }
+            return mayor;
+        }
+
+        private void crecer() {
+            long[] antiguasClaves = claves;
+            long[] antiguosGastos = gastos;
+            long[] antiguosPedidos = pedidos;
+            boolean[] antiguasUsadas = usadas;
+            int capacidad = claves.length * 2;
+            claves = new long[capacidad];
+            gastos = new long[capacidad];
+            pedidos = new long[capacidad];
+            usadas = new boolean[capacidad];
+            tamano = 0;
+            for (int i = 0; i < antiguasClaves.length; i++) {
+                if (antiguasUsadas[i]) {
+                    sumar(antiguasClaves[i], antiguosGastos[i], antiguosPedidos[i]);
+                }
+            }
+        }
+    }
+}
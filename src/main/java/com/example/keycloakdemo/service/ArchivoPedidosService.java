@@ -0,0 +1,91 @@
+package com.example.keycloakdemo.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.keycloakdemo.model.EstadoPedido;
+import com.example.keycloakdemo.repository.PedidoArchivadoRepository;
+import com.example.keycloakdemo.repository.PedidoRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Mueve los pedidos terminados y antiguos (con sus items) a pedidos_archivo y
+ * pedido_item_archivo. Cada bloque se copia y se borra en su propia transacción
+ * corta, así los bloqueos sobre pedidos duran lo que tarda un bloque.
+ *
+ * El cron se dispara en todas las instancias; los candidatos de cada bloque se
+ * leen con FOR UPDATE SKIP LOCKED, así que se reparten los pedidos entre ellas.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ArchivoPedidosService {
+
+    private static final Set<String> ARCHIVABLES = Set.of(EstadoPedido.ENTREGADO.name(), EstadoPedido.CANCELADO.name());
+
+    private final PedidoRepository pedidoRepository;
+    private final PedidoArchivadoRepository pedidoArchivadoRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${pedidos.archivo.antiguedad-dias:90}")
+    private long antiguedadDias;
+
+    @Value("${pedidos.archivo.tamano-bloque:500}")
+    private int tamanoBloque;
+
+    @Value("${pedidos.archivo.max-bloques:200}")
+    private int maxBloques;
+
+    private record Movidos(int pedidos, int items) {
+    }
+
+    /**
+     * Archiva como mucho max-bloques bloques por ejecución; lo que quede se
+     * mueve en las siguientes. Devuelve el número de pedidos movidos.
+     */
+    @Scheduled(cron = "${pedidos.archivo.cron:0 30 3 * * *}")
+    public int archivar() {
+        LocalDateTime limite = LocalDateTime.now().minusDays(antiguedadDias);
+        long inicio = System.nanoTime();
+        int pedidos = 0;
+        int items = 0;
+
+        for (int bloque = 0; bloque < maxBloques; bloque++) {
+            Movidos movidos = transactionTemplate.execute(status -> archivarBloque(limite));
+            pedidos += movidos.pedidos();
+            items += movidos.items();
+            if (movidos.pedidos() < tamanoBloque) {
+                break;
+            }
+        }
+
+        meterRegistry.counter("pedidos.archivados").increment(pedidos);
+        log.info("Archivado de pedidos anteriores a {}: {} pedidos y {} items movidos en {} ms",
+                limite, pedidos, items, (System.nanoTime() - inicio) / 1_000_000);
+        return pedidos;
+    }
+
+    private Movidos archivarBloque(LocalDateTime limite) {
+        List<Long> ids = pedidoRepository.findIdsArchivables(ARCHIVABLES, limite, tamanoBloque);
+        if (ids.isEmpty()) {
+            return new Movidos(0, 0);
+        }
+
+        // los estados terminales no cambian, así que el bloque leído sigue siendo válido al copiarlo
+        int pedidos = pedidoArchivadoRepository.copiarPedidos(ids);
+        int items = pedidoArchivadoRepository.copiarItems(ids);
+        pedidoRepository.borrarItemsDePedidos(ids);
+        pedidoRepository.borrarPorIds(ids);
+        return new Movidos(pedidos, items);
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.keycloakdemo.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Lectura del parámetro fields (p.ej. fields=id,nombre,precio) contra la lista
+ * de campos permitidos de cada recurso. El id se incluye siempre: hace falta
+ * para el cursor de paginación.
+ */
+public final class Campos {
+
+    private Campos() {
+    }
+
+    public static Set<String> leer(String fields, Set<String> permitidos) {
+        Set<String> campos = new LinkedHashSet<>();
+        campos.add("id");
+        Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(campo -> !campo.isEmpty())
+                .forEach(campo -> {
+                    if (!permitidos.contains(campo)) {
+                        throw new IllegalArgumentException("Campo no válido en fields: " + campo
+                                + ". Permitidos: " + new TreeSet<>(permitidos));
+                    }
+                    campos.add(campo);
+                });
+        return campos;
+    }
+}
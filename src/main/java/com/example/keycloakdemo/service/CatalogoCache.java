@@ -0,0 +1,321 @@
+package com.example.keycloakdemo.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.keycloakdemo.dto.CategoriaResponseDTO;
+import com.example.keycloakdemo.dto.FacetaCategoriaDTO;
+import com.example.keycloakdemo.dto.FacetaPrecioDTO;
+import com.example.keycloakdemo.dto.ProductoResponseDTO;
+import com.example.keycloakdemo.model.CambioCatalogo;
+import com.example.keycloakdemo.model.TipoCambioCatalogo;
+import com.example.keycloakdemo.repository.CambioCatalogoRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Cachés del catálogo en memoria (Caffeine, configuradas en spring.cache.*):
+ * productos y categorías por ID, y los IDs de cada página de productos.
+ *
+ * Las páginas guardan sólo IDs, que cambian al crear o borrar productos; su
+ * contenido sale de la caché por ID. Así un cambio de stock invalida sólo su
+ * producto. Las invalidaciones se hacen tras el commit: antes, una lectura
+ * concurrente volvería a guardar el valor anterior. Aun así, una lectura de BD
+ * que empezó antes del commit puede terminar después de la invalidación: por eso
+ * cada invalidación se numera, y lo que se leyó antes de la última invalidación
+ * de su clave se quita de la caché nada más guardarlo. Las marcas de invalidación
+ * caducan pasado VIGENCIA_MARCAS, y una lectura que tarde más no se guarda, así
+ * que su número no crece con los productos que se van vendiendo.
+ *
+ * Las facetas de GET /api/productos/filtro se guardan por filtro en una caché
+ * propia con un TTL corto (productos.filtro.facetas-ttl-segundos). Se vacían con
+ * las altas y bajas, las ediciones y los cambios de categoría; los cambios de
+ * stock o precio, que llegan con cada pedido, sólo se notan al caducar.
+ *
+ * Cada invalidación deja además un apunte en cambio_catalogo, en la misma
+ * transacción que el cambio, para que SincronizacionCatalogoService la aplique
+ * en las demás instancias.
+ */
+@Component
+@RequiredArgsConstructor
+public class CatalogoCache {
+
+    public static final String PRODUCTOS = "productos";
+    public static final String PAGINAS_PRODUCTOS = "productos-paginas";
+    public static final String CATEGORIAS = "categorias";
+    public static final String FACETAS = "productos-facetas";
+
+    // 200 IDs de hasta 19 cifras más la coma caben en la columna ids (4000)
+    static final int IDS_POR_APUNTE = 200;
+
+    private final CacheManager cacheManager;
+    private final CambioCatalogoRepository cambioCatalogoRepository;
+    private final IndiceProductos indiceProductos;
+
+    // Identifica a esta instancia en cambio_catalogo y nodo_catalogo
+    private final String nodo = UUID.randomUUID().toString();
+
+    // Una lectura más larga no se guarda en caché: ninguna necesita marcas más antiguas
+    static final Duration VIGENCIA_MARCAS = Duration.ofMinutes(1);
+
+    // Número de la última invalidación de cada clave, y del último vaciado, por caché
+    private final AtomicLong invalidaciones = new AtomicLong();
+    private final Map<String, Map<Object, Long>> invalidadas = new ConcurrentHashMap<>();
+    private final Map<String, Long> vaciadas = new ConcurrentHashMap<>();
+
+    @Value("${catalogo.sincronizacion.habilitada:true}")
+    private boolean sincronizacionHabilitada;
+
+    @Value("${productos.filtro.facetas-ttl-segundos:30}")
+    private long facetasTtlSegundos;
+
+    @Value("${productos.filtro.max-facetas:10000}")
+    private long maxFacetas;
+
+    // Fuera del CacheManager porque necesita su propio TTL
+    private Cache facetas;
+
+    @PostConstruct
+    void crearCacheFacetas() {
+        facetas = new CaffeineCache(FACETAS, Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(facetasTtlSegundos))
+                .maximumSize(maxFacetas)
+                .build());
+    }
+
+    public String getNodo() {
+        return nodo;
+    }
+
+    public boolean isSincronizacionHabilitada() {
+        return sincronizacionHabilitada;
+    }
+
+    public ProductoResponseDTO producto(Long id) {
+        return cache(PRODUCTOS).get(id, ProductoResponseDTO.class);
+    }
+
+    public CategoriaResponseDTO categoria(Long id) {
+        return cache(CATEGORIAS).get(id, CategoriaResponseDTO.class);
+    }
+
+    public ProductoResponseDTO producto(Long id, Supplier<ProductoResponseDTO> cargar) {
+        return obtener(PRODUCTOS, id, ProductoResponseDTO.class, cargar);
+    }
+
+    public CategoriaResponseDTO categoria(Long id, Supplier<CategoriaResponseDTO> cargar) {
+        return obtener(CATEGORIAS, id, CategoriaResponseDTO.class, cargar);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Long> idsPagina(int limite, long after, Supplier<List<Long>> cargar) {
+        return obtener(PAGINAS_PRODUCTOS, limite + ":" + after, List.class, () -> List.copyOf(cargar.get()));
+    }
+
+    // clave: el filtro sin la condición de categoría
+    @SuppressWarnings("unchecked")
+    public List<FacetaCategoriaDTO> facetaCategorias(Object clave, Supplier<List<FacetaCategoriaDTO>> cargar) {
+        return obtener(FACETAS, List.of("categorias", clave), List.class, () -> List.copyOf(cargar.get()));
+    }
+
+    // clave: el filtro sin las condiciones de precio
+    @SuppressWarnings("unchecked")
+    public List<FacetaPrecioDTO> facetaPrecios(Object clave, Supplier<List<FacetaPrecioDTO>> cargar) {
+        return obtener(FACETAS, List.of("precios", clave), List.class, () -> List.copyOf(cargar.get()));
+    }
+
+    /**
+     * Productos de los IDs indicados, en el mismo orden. Los que no están en caché
+     * se cargan con una sola llamada a cargar y se guardan.
+     */
+    public List<ProductoResponseDTO> productos(List<Long> ids, Function<List<Long>, List<ProductoResponseDTO>> cargar) {
+        Cache productos = cache(PRODUCTOS);
+        Map<Long, ProductoResponseDTO> encontrados = new HashMap<>();
+        List<Long> faltan = new ArrayList<>();
+        for (Long id : ids) {
+            ProductoResponseDTO producto = productos.get(id, ProductoResponseDTO.class);
+            if (producto != null) {
+                encontrados.put(id, producto);
+            } else {
+                faltan.add(id);
+            }
+        }
+        if (!faltan.isEmpty()) {
+            Lectura lectura = empezarLectura();
+            for (ProductoResponseDTO producto : cargar.apply(faltan)) {
+                guardar(PRODUCTOS, producto.getId(), producto, lectura);
+                encontrados.put(producto.getId(), producto);
+            }
+        }
+        // un ID borrado entre medias simplemente no aparece
+        return ids.stream().map(encontrados::get).filter(Objects::nonNull).toList();
+    }
+
+    // Cambios de stock, precio, etc. de productos existentes
+    public void productosCambiados(Collection<Long> ids) {
+        publicar(TipoCambioCatalogo.PRODUCTOS, ids);
+    }
+
+    // Cambios de nombre o descripción: además se reindexan para la búsqueda
+    public void productosEditados(Collection<Long> ids) {
+        publicar(TipoCambioCatalogo.PRODUCTOS_EDITADOS, ids);
+    }
+
+    // Altas y bajas: además cambian los IDs de las páginas y el índice de búsqueda
+    public void productosAnadidosOBorrados(Collection<Long> ids) {
+        publicar(TipoCambioCatalogo.ALTAS_BAJAS_PRODUCTOS, ids);
+    }
+
+    // Con afectaProductos (p.ej. cambio de nombre) se invalidan todos los productos, que la incluyen
+    public void categoriaCambiada(Long id, boolean afectaProductos) {
+        publicar(afectaProductos ? TipoCambioCatalogo.CATEGORIA_Y_PRODUCTOS : TipoCambioCatalogo.CATEGORIA, List.of(id));
+    }
+
+    // Invalidación local, sin apunte: la usa también la sincronización entre instancias
+    void aplicar(TipoCambioCatalogo tipo, Collection<Long> ids) {
+        switch (tipo) {
+            case PRODUCTOS -> ids.forEach(id -> invalidar(PRODUCTOS, id));
+            case PRODUCTOS_EDITADOS -> {
+                ids.forEach(id -> invalidar(PRODUCTOS, id));
+                vaciar(FACETAS);
+                indiceProductos.reindexar(ids);
+            }
+            case ALTAS_BAJAS_PRODUCTOS -> {
+                ids.forEach(id -> invalidar(PRODUCTOS, id));
+                vaciar(PAGINAS_PRODUCTOS);
+                vaciar(FACETAS);
+                indiceProductos.reindexar(ids);
+            }
+            case CATEGORIA -> {
+                ids.forEach(id -> invalidar(CATEGORIAS, id));
+                vaciar(FACETAS);
+            }
+            case CATEGORIA_Y_PRODUCTOS -> {
+                ids.forEach(id -> invalidar(CATEGORIAS, id));
+                vaciar(PRODUCTOS);
+                vaciar(FACETAS);
+            }
+        }
+    }
+
+    // Cuando esta instancia ha podido perderse apuntes ya purgados
+    void vaciar() {
+        List.of(PRODUCTOS, PAGINAS_PRODUCTOS, CATEGORIAS, FACETAS).forEach(this::vaciar);
+    }
+
+    private <T> T obtener(String nombre, Object clave, Class<T> tipo, Supplier<T> cargar) {
+        T valor = cache(nombre).get(clave, tipo);
+        if (valor != null) {
+            return valor;
+        }
+        Lectura lectura = empezarLectura();
+        valor = cargar.get();
+        guardar(nombre, clave, valor, lectura);
+        return valor;
+    }
+
+    // Lectura de BD que empezó tras la invalidación número inicio, en el instante nanos
+    private record Lectura(long inicio, long nanos) {
+    }
+
+    private Lectura empezarLectura() {
+        return new Lectura(invalidaciones.get(), System.nanoTime());
+    }
+
+    /**
+     * Guarda un valor leído de BD. Si desde que empezó la lectura se invalidó su
+     * clave, puede ser anterior al commit: se quita. Como la invalidación numera
+     * antes de quitar y aquí se comprueba después de guardar, en cualquier orden
+     * uno de los dos lo elimina. Si la lectura duró más que VIGENCIA_MARCAS, la
+     * marca que la anularía puede haber caducado: también se quita.
+     */
+    private void guardar(String nombre, Object clave, Object valor, Lectura lectura) {
+        Cache cache = cache(nombre);
+        cache.put(clave, valor);
+        if (System.nanoTime() - lectura.nanos() > VIGENCIA_MARCAS.toNanos()
+                || vaciadas.getOrDefault(nombre, 0L) > lectura.inicio()
+                || invalidadas.getOrDefault(nombre, Map.of()).getOrDefault(clave, 0L) > lectura.inicio()) {
+            cache.evict(clave);
+        }
+    }
+
+    private void invalidar(String nombre, Object clave) {
+        invalidadas.computeIfAbsent(nombre, n -> Caffeine.newBuilder()
+                        .expireAfterWrite(VIGENCIA_MARCAS)
+                        .<Object, Long>build()
+                        .asMap())
+                .put(clave, invalidaciones.incrementAndGet());
+        cache(nombre).evict(clave);
+    }
+
+    private void vaciar(String nombre) {
+        long numero = invalidaciones.incrementAndGet();
+        vaciadas.put(nombre, numero);
+        cache(nombre).clear();
+        // el vaciado cubre las invalidaciones de clave anteriores
+        Map<Object, Long> claves = invalidadas.get(nombre);
+        if (claves != null) {
+            claves.values().removeIf(anterior -> anterior < numero);
+        }
+    }
+
+    private void publicar(TipoCambioCatalogo tipo, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<Long> copia = List.copyOf(ids);
+        if (sincronizacionHabilitada) {
+            for (int desde = 0; desde < copia.size(); desde += IDS_POR_APUNTE) {
+                CambioCatalogo cambio = new CambioCatalogo();
+                cambio.setTipo(tipo);
+                cambio.setIds(copia.subList(desde, Math.min(desde + IDS_POR_APUNTE, copia.size())).stream()
+                        .map(String::valueOf)
+                        .collect(Collectors.joining(",")));
+                cambio.setNodo(nodo);
+                cambioCatalogoRepository.save(cambio);
+            }
+        }
+        trasCommit(() -> aplicar(tipo, copia));
+    }
+
+    private void trasCommit(Runnable invalidar) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidar.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidar.run();
+            }
+        });
+    }
+
+    private Cache cache(String nombre) {
+        if (FACETAS.equals(nombre)) {
+            return facetas;
+        }
+        return Objects.requireNonNull(cacheManager.getCache(nombre), "Caché no configurada: " + nombre);
+    }
+}
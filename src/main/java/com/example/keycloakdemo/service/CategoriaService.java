@@ -1,19 +1,25 @@
 package com.example.keycloakdemo.service;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import com.example.keycloakdemo.dto.CategoriaRequestDTO;
 import com.example.keycloakdemo.dto.CategoriaResponseDTO;
 import com.example.keycloakdemo.dto.CategoriaResumenDTO;
+import com.example.keycloakdemo.dto.PaginaDTO;
 import com.example.keycloakdemo.dto.ProductoResumenDTO;
 import com.example.keycloakdemo.exception.DuplicateResourceException;
 import com.example.keycloakdemo.exception.ResourceNotFoundException;
 import com.example.keycloakdemo.model.Categoria;
-import com.example.keycloakdemo.model.Producto;
 import com.example.keycloakdemo.repository.CategoriaRepository;
+import com.example.keycloakdemo.repository.ProductoRepository;
 
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
@@ -26,6 +32,12 @@ import lombok.extern.slf4j.Slf4j;
 public class CategoriaService {
 
    private final CategoriaRepository categoriaRepository;
+   private final ProductoRepository productoRepository;
+   private final CatalogoCache catalogoCache;
+   private final ResumenCategoriaService resumenCategoriaService;
+
+   @Value("${categorias.max-productos:20}")
+   private int maxProductos;
 
    public CategoriaResponseDTO crearCategoria(CategoriaRequestDTO request) {
       if (categoriaRepository.existsByNombre(request.getNombre())) {
@@ -33,24 +45,45 @@ public class CategoriaService {
       }
       Categoria categoria = toEntity(request);
       Categoria guardada = categoriaRepository.save(categoria);
+      resumenCategoriaService.categoriaCreada(guardada.getId());
       log.info("Categoría guardada con ID: {}", guardada.getId());
 
       return toResponseDTO(guardada);
 
    }
 
-   public List<CategoriaResponseDTO> obtenerTodas() {
-      List<Categoria> categorias = categoriaRepository.findAll();
-      return categorias.stream()
-            .map(this::toResponseDTOWithProducts)
-            .collect(Collectors.toList());
+   public PaginaDTO<CategoriaResponseDTO> obtenerPagina(int limite, String after, boolean incluirProductos) {
+      Paginas.Cursor cursor = Paginas.leerCursor(after, "categorias");
+      List<Categoria> categorias = categoriaRepository.findByIdGreaterThanOrderByIdAsc(cursor.id(), Limit.of(limite + 1));
+      PaginaDTO<CategoriaResponseDTO> pagina = Paginas.construir(categorias, limite, "categorias", Categoria::getId, this::toResponseDTO);
+      if (incluirProductos) {
+         anadirProductos(pagina.getContenido());
+      }
+      return pagina;
    }
 
-   public CategoriaResponseDTO obtenerPorId(Long id) {
-      Categoria categoria = categoriaRepository.findById(id)
+   // Sólo se cachea sin productos: con ellos la respuesta depende del stock de cada uno
+   public CategoriaResponseDTO obtenerPorId(Long id, boolean incluirProductos) {
+      if (!incluirProductos) {
+         return catalogoCache.categoria(id, () -> toResponseDTO(buscarCategoria(id)));
+      }
+      CategoriaResponseDTO dto = toResponseDTO(buscarCategoria(id));
+      anadirProductos(List.of(dto));
+      return dto;
+   }
+
+   private Categoria buscarCategoria(Long id) {
+      return categoriaRepository.findById(id)
             .orElseThrow(() -> new ResourceNotFoundException("No se encuentra categoría con ID: " + id));
+   }
 
-      return toResponseDTOWithProducts(categoria);
+   public Long obtenerVersion(Long id) {
+      CategoriaResponseDTO enCache = catalogoCache.categoria(id);
+      if (enCache != null) {
+         return enCache.getVersion();
+      }
+      return categoriaRepository.findVersionById(id)
+            .orElseThrow(() -> new ResourceNotFoundException("No se encuentra categoría con ID: " + id));
    }
 
    public CategoriaResponseDTO actualizarCategoria(Long id, CategoriaRequestDTO request) {
@@ -65,10 +98,15 @@ public class CategoriaService {
                }
             });
 
+      boolean cambiaNombre = !categoria.getNombre().equals(request.getNombre());
+      if (cambiaNombre) {
+         productoRepository.subirVersionPorCategoria(id);
+      }
+      catalogoCache.categoriaCambiada(id, cambiaNombre);
       categoria.setNombre(request.getNombre());
       categoria.setDescripcion(request.getDescripcion());
 
-      Categoria actualizada = categoriaRepository.save(categoria);
+      Categoria actualizada = categoriaRepository.saveAndFlush(categoria);
       log.info("Categoría actualizada con ID: {}", actualizada.getId());
 
       return toResponseDTO(categoria);
@@ -79,6 +117,8 @@ public class CategoriaService {
          throw new ResourceNotFoundException(("No se encuentra categoria con ID: ") + id);
       }
       categoriaRepository.deleteById(id);
+      resumenCategoriaService.categoriaEliminada(id);
+      catalogoCache.categoriaCambiada(id, false);
       log.info("Categoría eliminada con ID: {}", id);
    }
 
@@ -87,27 +127,35 @@ public class CategoriaService {
       return toResumenDTO(categoria);
    }
 
-   // Mapeo manual de productos para evitar problemas con MapStruct
-   private CategoriaResponseDTO toResponseDTOWithProducts(Categoria categoria) {
-      CategoriaResponseDTO dto = toResponseDTO(categoria);
-
-      // Mapear productos manualmente
-      if (categoria.getProductos() != null && !categoria.getProductos().isEmpty()) {
-         List<ProductoResumenDTO> productosResumen = categoria.getProductos().stream()
-               .map(this::toProductoResumenDTO)
-               .collect(Collectors.toList());
-         dto.setProductos(productosResumen);
+   // Productos de todas las categorías en dos consultas (recuento y primeros N por categoría),
+   // en lugar de recorrer categoria.getProductos() de cada una
+   private void anadirProductos(List<CategoriaResponseDTO> categorias) {
+      if (categorias.isEmpty()) {
+         return;
       }
+      List<Long> ids = categorias.stream().map(CategoriaResponseDTO::getId).collect(Collectors.toList());
 
-      return dto;
+      Map<Long, Long> recuentos = productoRepository.contarPorCategoria(ids).stream()
+            .collect(Collectors.toMap(fila -> (Long) fila[0], fila -> (Long) fila[1]));
+
+      // fila: [id, nombre, precio, stock, categoria_id]
+      Map<Long, List<ProductoResumenDTO>> productos = productoRepository.findPrimerosPorCategoria(ids, maxProductos)
+            .stream()
+            .collect(Collectors.groupingBy(fila -> ((Number) fila[4]).longValue(),
+                  Collectors.mapping(this::toProductoResumenDTO, Collectors.toList())));
+
+      for (CategoriaResponseDTO dto : categorias) {
+         dto.setNumeroProductos(recuentos.getOrDefault(dto.getId(), 0L));
+         dto.setProductos(productos.getOrDefault(dto.getId(), new ArrayList<>()));
+      }
    }
 
-   private ProductoResumenDTO toProductoResumenDTO(Producto producto) {
+   private ProductoResumenDTO toProductoResumenDTO(Object[] fila) {
       ProductoResumenDTO dto = new ProductoResumenDTO();
-      dto.setId(producto.getId());
-      dto.setNombre(producto.getNombre());
-      dto.setPrecio(producto.getPrecio());
-      dto.setStock(producto.getStock());
+      dto.setId(((Number) fila[0]).longValue());
+      dto.setNombre((String) fila[1]);
+      dto.setPrecio((BigDecimal) fila[2]);
+      dto.setStock(fila[3] != null ? ((Number) fila[3]).intValue() : null);
       return dto;
    }
 
@@ -123,13 +171,7 @@ public class CategoriaService {
       dto.setId(categoria.getId());
       dto.setNombre(categoria.getNombre());
       dto.setDescripcion(categoria.getDescripcion());
-
-      if (categoria.getProductos() != null && !categoria.getProductos().isEmpty()) {
-         dto.setProductos(categoria.getProductos().stream()
-               .map(this::toProductoResumenDTO)
-               .collect(Collectors.toList()));
-      }
-
+      dto.setVersion(categoria.getVersion());
       return dto;
    }
 }
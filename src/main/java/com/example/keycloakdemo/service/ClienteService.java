@@ -2,7 +2,7 @@ package com.example.keycloakdemo.service;
 
 import com.example.keycloakdemo.dto.ClienteRequestDTO;
 import com.example.keycloakdemo.dto.ClienteResponseDTO;
-import com.example.keycloakdemo.dto.PedidoResumenDTO;
+import com.example.keycloakdemo.dto.PaginaDTO;
 import com.example.keycloakdemo.exception.DuplicateResourceException;
 import com.example.keycloakdemo.exception.KeycloakOperationException;
 import com.example.keycloakdemo.exception.ResourceNotFoundException;
@@ -13,9 +13,13 @@ import lombok.extern.slf4j.Slf4j;
 
 import org.
 springframework.stereotype.Service;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.transaction.annotation.Transactional;
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -27,6 +31,10 @@ public class ClienteService {
     private final ClienteRepository clienteRepository;
     private final KeycloakAdminService keycloakAdminService;
     private final PedidoService pedidoService;
+    private final PedidoArchivadoRepository pedidoArchivadoRepository;
+
+    @Value("${clientes.ultimos-pedidos:5}")
+    private int ultimosPedidos;
 
     public ClienteResponseDTO crear(ClienteRequestDTO request) {
 
@@ -82,16 +90,20 @@ public class ClienteService {
         }
     }
 
-    public List<ClienteResponseDTO> obtenerTodos() {
-        return clienteRepository.findAll().stream()
-                .map(this::toResponseDTO)
-                .collect(Collectors.toList());
+    public PaginaDTO<ClienteResponseDTO> obtenerPagina(int limite, String after) {
+        Paginas.Cursor cursor = Paginas.leerCursor(after, "clientes");
+        List<Cliente> filas = clienteRepository.findByIdGreaterThanOrderByIdAsc(cursor.id(), Limit.of(limite + 1));
+        PaginaDTO<ClienteResponseDTO> pagina = Paginas.construir(filas, limite, "clientes", Cliente::getId, this::toResponseDTO);
+        anadirResumenPedidos(pagina.getContenido());
+        return pagina;
     }
 
     public ClienteResponseDTO obtenerPorId(Long id) {
         Cliente cliente = clienteRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Cliente no encontrado"));
-        return toResponseDTO(cliente);
+        ClienteResponseDTO dto = toResponseDTO(cliente);
+        anadirResumenPedidos(List.of(dto));
+        return dto;
     }
 
     public Cliente obtenerPorKeycloakUserId(String keycloakUserId) {
@@ -114,7 +126,9 @@ public class ClienteService {
         Cliente actualizado = clienteRepository.save(cliente);
           log.info("Cliente actualizado con ID: {}", actualizado.getId());
 
-        return toResponseDTO(actualizado);
+        ClienteResponseDTO dto = toResponseDTO(actualizado);
+        anadirResumenPedidos(List.of(dto));
+        return dto;
     }
 
     public void eliminarCliente(Long id) {
@@ -122,11 +136,15 @@ public class ClienteService {
                 .orElseThrow(() -> new ResourceNotFoundException("Cliente no encontrado"));
 
         try {
-            // 1. Eliminar de Keycloak
+            // 1. Eliminar de la base de datos, con sus pedidos archivados; el flush hace
+            //    saltar aquí cualquier restricción antes de tocar Keycloak
+            pedidoArchivadoRepository.borrarItemsDeCliente(id);
+            pedidoArchivadoRepository.borrarPorCliente(id);
+            clienteRepository.delete(cliente);
+            clienteRepository.flush();
+
+            // 2. Eliminar de Keycloak; si falla, la transacción deshace el borrado en BD
             keycloakAdminService.eliminarUsuario(cliente.getKeycloakUserId());
-
-            // 2. Eliminar de la base de datos
-            clienteRepository.deleteById(id);
             log.info("Cliente eliminado con ID: {}", id);
 
         } catch (Exception e) {
@@ -166,15 +184,28 @@ public class ClienteService {
         dto.setTelefono(cliente.getTelefono());
         dto.setDireccion(cliente.getDireccion());
         dto.setFechaRegistro(cliente.getFechaRegistro());
+        return dto;
+    }
 
-        // Mapear pedidos a resumen (sin items completos)
-        if (cliente.getPedidos() != null && !cliente.getPedidos().isEmpty()) {
-            dto.setPedidos(cliente.getPedidos().stream()
-                    .map(pedidoService::toPedidoResumenDTO)
-                    .collect(Collectors.toList()));
+    // Totales y últimos pedidos de todos los clientes de la respuesta, sin recorrer cliente.getPedidos()
+    private void anadirResumenPedidos(List<ClienteResponseDTO> clientes) {
+        Map<Long, PedidoService.ResumenPedidosCliente> resumenes = pedidoService.resumirPorCliente(
+                clientes.stream().map(ClienteResponseDTO::getId).collect(Collectors.toList()), ultimosPedidos);
+
+        for (ClienteResponseDTO dto : clientes) {
+            PedidoService.ResumenPedidosCliente resumen = resumenes.get(dto.getId());
+            if (resumen == null) {
+                dto.setNumeroPedidos(0L);
+                dto.setTotalPedidos(BigDecimal.ZERO);
+                continue;
+            }
+            dto.setNumeroPedidos(resumen.numeroPedidos());
+            dto.setTotalPedidos(resumen.totalPedidos());
+            dto.setFechaUltimoPedido(resumen.fechaUltimoPedido());
+            if (!resumen.ultimos().isEmpty()) {
+                dto.setPedidos(resumen.ultimos());
+            }
         }
-
-        return dto;
     }
 
 }
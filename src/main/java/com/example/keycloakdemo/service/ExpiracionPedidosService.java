@@ -0,0 +1,115 @@
+package com.example.keycloakdemo.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.keycloakdemo.event.PedidoCambiadoEvent;
+import com.example.keycloakdemo.model.EstadoPedido;
+import com.example.keycloakdemo.repository.PedidoRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caducidad de los pedidos PENDIENTE que retienen stock. Los vencimientos se
+ * llevan en una rueda temporal en memoria, así cada tick sólo toca los pedidos
+ * que vencen en él en lugar de recorrer la tabla.
+ *
+ * La rueda no se entera de las confirmaciones o cancelaciones: al vencer, la
+ * cancelación sólo afecta a los pedidos que siguen PENDIENTE y fuera de plazo.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ExpiracionPedidosService {
+
+    private final PedidoService pedidoService;
+    private final PedidoRepository pedidoRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${pedidos.reserva.ttl-minutos:30}")
+    private long ttlMinutos;
+
+    @Value("${pedidos.reserva.tick-ms:1000}")
+    private long tickMs;
+
+    @Value("${pedidos.reserva.lote-expiracion:500}")
+    private int loteExpiracion;
+
+    private RuedaTemporal rueda;
+
+    @PostConstruct
+    public void iniciar() {
+        // 4 niveles de 64 huecos: con ticks de 1 s cubre más de 190 días
+        rueda = new RuedaTemporal(tickMs, 64, 4, System.currentTimeMillis());
+    }
+
+    // Reconstruye la rueda con los PENDIENTE existentes (usa el índice estado + fecha_pedido)
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruir() {
+        List<Object[]> pendientes = pedidoRepository.findIdsYFechasByEstado(EstadoPedido.PENDIENTE);
+        synchronized (this) {
+            for (Object[] fila : pendientes) {
+                rueda.anadir((Long) fila[0], vencimientoMs((LocalDateTime) fila[1]));
+            }
+        }
+        log.info("Caducidad de reservas: {} pedidos PENDIENTE en seguimiento, TTL {} min", pendientes.size(), ttlMinutos);
+    }
+
+    @TransactionalEventListener
+    public void onPedidoCambiado(PedidoCambiadoEvent cambio) {
+        if (cambio.estado() == EstadoPedido.PENDIENTE) {
+            // el pedido acaba de crearse: su fecha es como muy tarde ahora
+            synchronized (this) {
+                rueda.anadir(cambio.pedidoId(), System.currentTimeMillis() + Duration.ofMinutes(ttlMinutos).toMillis());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${pedidos.reserva.tick-ms:1000}")
+    public void expirar() {
+        List<Long> vencidos;
+        synchronized (this) {
+            vencidos = rueda.avanzar(System.currentTimeMillis());
+        }
+        if (vencidos.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime limite = LocalDateTime.now().minusMinutes(ttlMinutos);
+        int expirados = 0;
+        for (int desde = 0; desde < vencidos.size(); desde += loteExpiracion) {
+            List<Long> bloque = vencidos.subList(desde, Math.min(desde + loteExpiracion, vencidos.size()));
+            try {
+                expirados += pedidoService.expirarPendientes(bloque, limite);
+            } catch (RuntimeException e) {
+                // otro proceso cambió algún pedido a la vez, o un fallo transitorio de BD (bloqueo,
+                // interbloqueo, conexión): el bloque vuelve a la rueda para el siguiente tick y se sigue con los demás
+                log.warn("Caducidad de {} pedidos aplazada: {}", bloque.size(), e.getMessage());
+                synchronized (this) {
+                    bloque.forEach(id -> rueda.anadir(id, System.currentTimeMillis()));
+                }
+            }
+        }
+
+        if (expirados > 0) {
+            meterRegistry.counter("pedidos.expirados").increment(expirados);
+            log.info("{} pedidos PENDIENTE caducados. Stock devuelto.", expirados);
+        }
+    }
+
+    private long vencimientoMs(LocalDateTime fechaPedido) {
+        return fechaPedido.plusMinutes(ttlMinutos).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
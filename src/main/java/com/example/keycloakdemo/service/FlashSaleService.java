@@ -0,0 +1,190 @@
+package com.example.keycloakdemo.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.keycloakdemo.model.ReservaStock;
+import com.example.keycloakdemo.repository.ProductoRepository;
+import com.example.keycloakdemo.repository.ReservaStockRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Modo venta flash: el stock de los productos configurados se reserva en memoria
+ * con CAS en lugar de bloquear la fila de producto en cada pedido.
+ *
+ * Cada reserva deja un apunte en reserva_stock dentro de la transacción del pedido,
+ * y un volcado periódico lo aplica a producto.stock en lote. Al arrancar, el
+ * disponible se reconstruye como stock menos apuntes pendientes, así que no se
+ * pierde nada si la aplicación se cae antes de volcar.
+ *
+ * El contador vive en memoria de cada instancia: este modo asume que los pedidos
+ * de los productos flash los atiende una única instancia.
+ */
+@Service
+@RequiredArgsConstructor
+@Transactional
+@Slf4j
+public class FlashSaleService {
+
+    private final ReservaStockRepository reservaStockRepository;
+    private final ProductoRepository productoRepository;
+    private final CatalogoCache catalogoCache;
+    private final ResumenCategoriaService resumenCategoriaService;
+
+    @Value("${pedidos.flash-sale.productos:}")
+    private String productosConfigurados;
+
+    @Value("${pedidos.flash-sale.lote-volcado:1000}")
+    private int loteVolcado;
+
+    // Un contador por producto; el ConcurrentHashMap reparte los productos entre sus segmentos
+    private final Map<Long, AtomicLong> disponible = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargar() {
+        Set<Long> ids = Arrays.stream(productosConfigurados.split(","))
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .map(Long::valueOf)
+                .collect(Collectors.toSet());
+
+        for (Long id : ids) {
+            productoRepository.findStockDisponible(id).ifPresentOrElse(
+                    stock -> {
+                        disponible.put(id, new AtomicLong(stock));
+                        log.info("Venta flash activa para producto {} con {} unidades disponibles", id, stock);
+                    },
+                    () -> log.warn("Venta flash: no se encuentra producto con ID: {}", id));
+        }
+    }
+
+    public boolean esFlash(Long productoId) {
+        return disponible.containsKey(productoId);
+    }
+
+    public long getDisponible(Long productoId) {
+        AtomicLong contador = disponible.get(productoId);
+        return contador != null ? contador.get() : 0;
+    }
+
+    /**
+     * Reserva todas las cantidades o ninguna. Debe llamarse dentro de la
+     * transacción del pedido: si ésta se deshace, las unidades vuelven al contador.
+     */
+    public boolean reservar(Map<Long, Integer> cantidades) {
+        List<Map.Entry<Long, Integer>> hechas = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : cantidades.entrySet()) {
+            if (!descontar(disponible.get(entry.getKey()), entry.getValue())) {
+                hechas.forEach(h -> disponible.get(h.getKey()).addAndGet(h.getValue()));
+                return false;
+            }
+            hechas.add(entry);
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    hechas.forEach(h -> disponible.get(h.getKey()).addAndGet(h.getValue()));
+                }
+            }
+        });
+
+        for (Map.Entry<Long, Integer> entry : hechas) {
+            ReservaStock reserva = new ReservaStock();
+            reserva.setProductoId(entry.getKey());
+            reserva.setCantidad(entry.getValue());
+            reservaStockRepository.save(reserva);
+        }
+        return true;
+    }
+
+    // Devuelve unidades al contador cuando la transacción que las repone en BD confirma
+    public void liberarTrasCommit(Long productoId, int cantidad) {
+        AtomicLong contador = disponible.get(productoId);
+        if (contador == null) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                contador.addAndGet(cantidad);
+            }
+        });
+    }
+
+    /**
+     * Tras fijar el stock a mano (p.ej. desde ProductoService) el disponible se
+     * mueve lo mismo que el stock. Se suma la diferencia en vez de fijar el valor:
+     * así no se pisan las reservas hechas mientras tanto, confirmadas o no.
+     * stockAnterior es exacto porque la fila se escribe con @Version y el volcado
+     * también sube la versión.
+     */
+    public void ajustarTrasCommit(Long productoId, int stockAnterior, int nuevoStock) {
+        AtomicLong contador = disponible.get(productoId);
+        if (contador == null || stockAnterior == nuevoStock) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                contador.addAndGet(nuevoStock - stockAnterior);
+            }
+        });
+    }
+
+    /**
+     * Aplica a producto.stock las reservas confirmadas, agrupadas por producto.
+     * Las reservas se leen bloqueadas y se borran por ID en la misma transacción.
+     */
+    @Scheduled(fixedDelayString = "${pedidos.flash-sale.intervalo-volcado-ms:500}")
+    public void volcar() {
+        List<ReservaStock> reservas = reservaStockRepository.findAllByOrderByIdAsc(Limit.of(loteVolcado));
+        if (reservas.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Integer> porProducto = reservas.stream()
+                .collect(Collectors.groupingBy(ReservaStock::getProductoId,
+                        Collectors.summingInt(ReservaStock::getCantidad)));
+        porProducto.forEach(productoRepository::restarStock);
+        resumenCategoriaService.stockCambiadoPorProducto(porProducto.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> -entry.getValue())));
+        catalogoCache.productosCambiados(porProducto.keySet());
+
+        reservaStockRepository.deleteAllByIdInBatch(reservas.stream()
+                .map(ReservaStock::getId)
+                .collect(Collectors.toList()));
+
+        log.debug("Volcadas {} reservas de venta flash sobre {} productos", reservas.size(), porProducto.size());
+    }
+
+    private boolean descontar(AtomicLong contador, int cantidad) {
+        long actual;
+        do {
+            actual = contador.get();
+            if (actual < cantidad) {
+                return false;
+            }
+        } while (!contador.compareAndSet(actual, actual - cantidad));
+        return true;
+    }
+}
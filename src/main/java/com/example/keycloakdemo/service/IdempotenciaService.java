@@ -0,0 +1,164 @@
+package com.example.keycloakdemo.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.keycloakdemo.dto.PedidoItemRequestDTO;
+import com.example.keycloakdemo.dto.PedidoRequestDTO;
+import com.example.keycloakdemo.dto.PedidoResponseDTO;
+import com.example.keycloakdemo.exception.DuplicateResourceException;
+import com.example.keycloakdemo.model.IdempotenciaPedido;
+import com.example.keycloakdemo.repository.IdempotenciaPedidoRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Soporte de Idempotency-Key para la creación de pedidos.
+ *
+ * Las claves recientes viven en memoria (acotadas en número y en tiempo) junto
+ * con la respuesta ya calculada, o con la petición aún en curso: un duplicado
+ * concurrente espera a la primera en lugar de competir con ella. La tabla
+ * idempotencia_pedido cubre los reinicios y las demás instancias.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotenciaService {
+
+    private final PedidoService pedidoService;
+    private final IdempotenciaPedidoRepository idempotenciaPedidoRepository;
+
+    @Value("${pedidos.idempotencia.max-claves:10000}")
+    private int maxClaves;
+
+    @Value("${pedidos.idempotencia.ttl-horas:24}")
+    private long ttlHoras;
+
+    private final Map<String, Entrada> claves = new ConcurrentHashMap<>();
+    private final Queue<String> ordenLlegada = new ConcurrentLinkedQueue<>();
+
+    private record Entrada(CompletableFuture<PedidoResponseDTO> respuesta, String huella, LocalDateTime fecha) {
+    }
+
+    public record Resultado(PedidoResponseDTO pedido, boolean repetido) {
+    }
+
+    public Resultado crear(String clave, PedidoRequestDTO request) {
+        if (clave.isBlank() || clave.length() > 100) {
+            throw new IllegalArgumentException("La cabecera Idempotency-Key debe tener entre 1 y 100 caracteres");
+        }
+        String huella = huella(request);
+
+        Entrada propia = new Entrada(new CompletableFuture<>(), huella, LocalDateTime.now());
+        Entrada existente = claves.putIfAbsent(clave, propia);
+        if (existente != null) {
+            comprobarHuella(existente.huella(), huella);
+            return new Resultado(esperar(existente.respuesta()), true);
+        }
+        registrarLlegada(clave);
+
+        try {
+            Resultado resultado;
+            try {
+                resultado = idempotenciaPedidoRepository.findById(clave)
+                        .map(registro -> repetir(registro, huella))
+                        .orElseGet(() -> new Resultado(pedidoService.crearIdempotente(clave, huella, request), false));
+            } catch (DataIntegrityViolationException e) {
+                // otra instancia registró la misma clave a la vez: se devuelve su pedido
+                resultado = idempotenciaPedidoRepository.findById(clave)
+                        .map(registro -> repetir(registro, huella))
+                        .orElseThrow(() -> e);
+            }
+            propia.respuesta().complete(resultado.pedido());
+            return resultado;
+        } catch (RuntimeException | Error e) {
+            // un fallo no se recuerda: el cliente puede reintentar con la misma clave,
+            // y quien esperaba a esta petición recibe el mismo error en lugar de quedarse bloqueado
+            claves.remove(clave, propia);
+            propia.respuesta().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    @Scheduled(fixedDelay = 300_000)
+    @Transactional
+    public void purgar() {
+        LocalDateTime limite = LocalDateTime.now().minusHours(ttlHoras);
+        claves.entrySet().removeIf(e -> e.getValue().respuesta().isDone() && e.getValue().fecha().isBefore(limite));
+        ordenLlegada.removeIf(clave -> !claves.containsKey(clave));
+
+        int borradas = idempotenciaPedidoRepository.borrarAnterioresA(limite);
+        if (borradas > 0) {
+            log.info("Purgadas {} Idempotency-Key caducadas", borradas);
+        }
+    }
+
+    // La respuesta se reconstruye desde el pedido guardado, sin tocar el stock
+    private Resultado repetir(IdempotenciaPedido registro, String huella) {
+        comprobarHuella(registro.getHuella(), huella);
+        return new Resultado(pedidoService.obtenerPorId(registro.getPedidoId()), true);
+    }
+
+    private void comprobarHuella(String esperada, String recibida) {
+        if (!esperada.equals(recibida)) {
+            throw new DuplicateResourceException("La Idempotency-Key ya se usó con un pedido distinto");
+        }
+    }
+
+    // SHA-256 de la forma canónica de la petición: cliente y líneas en el orden recibido
+    private static String huella(PedidoRequestDTO request) {
+        StringBuilder canonica = new StringBuilder("cliente=").append(request.getClienteId());
+        for (PedidoItemRequestDTO item : request.getItems()) {
+            canonica.append(";producto=").append(item.getProductoId()).append(",cantidad=").append(item.getCantidad());
+        }
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(canonica.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // toda JVM incluye SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private PedidoResponseDTO esperar(CompletableFuture<PedidoResponseDTO> respuesta) {
+        try {
+            return respuesta.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    // Al superar el máximo se descartan las claves más antiguas ya resueltas
+    private void registrarLlegada(String clave) {
+        ordenLlegada.add(clave);
+        while (claves.size() > maxClaves) {
+            String antigua = ordenLlegada.poll();
+            if (antigua == null) {
+                return;
+            }
+            Entrada entrada = claves.get(antigua);
+            if (entrada != null && entrada.respuesta().isDone()) {
+                claves.remove(antigua, entrada);
+            }
+        }
+    }
+}
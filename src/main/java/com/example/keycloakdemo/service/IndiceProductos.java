@@ -0,0 +1,326 @@
+package com.example.keycloakdemo.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import com.example.keycloakdemo.repository.ProductoRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Índice invertido en memoria sobre nombre y descripción de los productos para
+ * GET /api/productos/buscar.
+ *
+ * El texto se pasa a minúsculas sin tildes ("Camión" y "camion" son el mismo
+ * término) y se parte en palabras. Cada palabra se indexa entera y por sus
+ * prefijos (n-gramas de borde), así "cam" ya encuentra "camión". Las listas de
+ * cada término son arrays primitivos ordenados por ID: la intersección se hace
+ * por búsqueda binaria sobre la lista más corta.
+ *
+ * Se construye al arrancar (antes de aceptar tráfico) y CatalogoCache lo
+ * mantiene al día tras cada alta, baja o cambio de texto, también los hechos en
+ * otras instancias. Las relecturas de la BD van de una en una, cada una con su
+ * escritura en el índice: así la última en aplicarse es también la última en
+ * leer, y dos ediciones seguidas del mismo producto no pueden dejar indexado el
+ * texto anterior.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IndiceProductos {
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    static final int MIN_PREFIJO = 2;
+    static final int MAX_PREFIJO = 15;
+    private static final int LOTE_CARGA = 5000;
+
+    // Peso de cada coincidencia: palabra entera o prefijo, en nombre o en descripción
+    private static final float NOMBRE = 3f;
+    private static final float NOMBRE_PREFIJO = 1.5f;
+    private static final float DESCRIPCION = 1f;
+    private static final float DESCRIPCION_PREFIJO = 0.5f;
+
+    private final ProductoRepository productoRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Lectura de la BD y escritura en el índice juntas; las búsquedas no lo esperan
+    private final ReentrantLock relectura = new ReentrantLock();
+    private final Map<String, Postings> indice = new HashMap<>();
+    // Términos de cada producto, para poder quitarlo sin recorrer el índice
+    private final Map<Long, String[]> terminosPorProducto = new HashMap<>();
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void construir() {
+        long inicio = System.nanoTime();
+        long ultimo = 0;
+        List<Object[]> filas;
+        do {
+            relectura.lock();
+            try {
+                filas = productoRepository.findTextosByIdGreaterThan(ultimo, Limit.of(LOTE_CARGA));
+                indexarFilas(filas);
+            } finally {
+                relectura.unlock();
+            }
+            if (!filas.isEmpty()) {
+                ultimo = (Long) filas.get(filas.size() - 1)[0];
+            }
+        } while (filas.size() == LOTE_CARGA);
+        log.info("Índice de búsqueda de productos construido: {} productos, {} términos en {} ms",
+                terminosPorProducto.size(), indice.size(), (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    // Vuelve a leer nombre y descripción de los IDs indicados; los que ya no existen se quitan
+    public void reindexar(Collection<Long> ids) {
+        Set<Long> pendientes = new HashSet<>(ids);
+        relectura.lock();
+        try {
+            List<Object[]> filas = productoRepository.findTextosByIdIn(pendientes);
+            lock.writeLock().lock();
+            try {
+                pendientes.forEach(this::quitar);
+                for (Object[] fila : filas) {
+                    poner((Long) fila[0], (String) fila[1], (String) fila[2]);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            relectura.unlock();
+        }
+    }
+
+    /**
+     * IDs de los productos que contienen todas las palabras de la consulta (enteras
+     * o como prefijo), de más a menos relevante; a igual puntuación, por ID.
+     */
+    public List<Long> buscar(String texto, int max) {
+        List<String> palabras = consulta(texto);
+
+        lock.readLock().lock();
+        try {
+            List<Postings> listas = listas(palabras);
+            if (listas.isEmpty()) {
+                return List.of();
+            }
+
+            // los max mejores, con el peor arriba para poder descartarlo
+            PriorityQueue<Resultado> mejores = new PriorityQueue<>(
+                    Comparator.comparingDouble(Resultado::puntuacion).thenComparing(Resultado::id, Comparator.reverseOrder()));
+            Postings menor = listas.get(0);
+            candidatos:
+            for (int i = 0; i < menor.tamano; i++) {
+                long id = menor.ids[i];
+                float puntuacion = menor.pesos[i];
+                for (int l = 1; l < listas.size(); l++) {
+                    Postings otra = listas.get(l);
+                    int posicion = Arrays.binarySearch(otra.ids, 0, otra.tamano, id);
+                    if (posicion < 0) {
+                        continue candidatos;
+                    }
+                    puntuacion += otra.pesos[posicion];
+                }
+                mejores.add(new Resultado(id, puntuacion));
+                if (mejores.size() > max) {
+                    mejores.poll();
+                }
+            }
+
+            List<Long> ids = new ArrayList<>(mejores.size());
+            while (!mejores.isEmpty()) {
+                ids.add(mejores.poll().id());
+            }
+            return ids.reversed();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Todos los IDs que contienen las palabras de la consulta, en orden de ID, para
+     * filtrar en la base de datos. Si pasan de max la consulta es demasiado general.
+     */
+    public List<Long> coincidencias(String texto, int max) {
+        List<String> palabras = consulta(texto);
+
+        lock.readLock().lock();
+        try {
+            List<Postings> listas = listas(palabras);
+            if (listas.isEmpty()) {
+                return List.of();
+            }
+            Postings menor = listas.get(0);
+            List<Long> ids = new ArrayList<>();
+            candidatos:
+            for (int i = 0; i < menor.tamano; i++) {
+                long id = menor.ids[i];
+                for (int l = 1; l < listas.size(); l++) {
+                    Postings otra = listas.get(l);
+                    if (Arrays.binarySearch(otra.ids, 0, otra.tamano, id) < 0) {
+                        continue candidatos;
+                    }
+                }
+                if (ids.size() == max) {
+                    throw new IllegalArgumentException("El nombre '" + texto + "' coincide con más de " + max
+                            + " productos: use un texto más concreto");
+                }
+                ids.add(id);
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static List<String> consulta(String texto) {
+        List<String> palabras = palabras(texto).stream()
+                .filter(palabra -> palabra.length() >= MIN_PREFIJO)
+                .distinct()
+                .toList();
+        if (palabras.isEmpty()) {
+            throw new IllegalArgumentException("La búsqueda necesita al menos una palabra de " + MIN_PREFIJO + " letras");
+        }
+        return palabras;
+    }
+
+    // Lista de cada palabra, de la más corta a la más larga; vacía si alguna no aparece. Con el lock de lectura
+    private List<Postings> listas(List<String> palabras) {
+        List<Postings> listas = new ArrayList<>(palabras.size());
+        for (String palabra : palabras) {
+            Postings lista = indice.get(palabra);
+            if (lista == null && palabra.length() > MAX_PREFIJO) {
+                lista = indice.get(palabra.substring(0, MAX_PREFIJO));
+            }
+            if (lista == null) {
+                return List.of();
+            }
+            listas.add(lista);
+        }
+        listas.sort(Comparator.comparingInt(lista -> lista.tamano));
+        return listas;
+    }
+
+    // Minúsculas sin tildes ni diéresis (la ñ queda como n) y partido en palabras
+    static List<String> palabras(String texto) {
+        if (texto == null || texto.isBlank()) {
+            return List.of();
+        }
+        String plano = MARCAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        return Arrays.stream(SEPARADORES.split(plano))
+                .filter(palabra -> !palabra.isEmpty())
+                .toList();
+    }
+
+    private void indexarFilas(List<Object[]> filas) {
+        lock.writeLock().lock();
+        try {
+            for (Object[] fila : filas) {
+                quitar((Long) fila[0]);
+                poner((Long) fila[0], (String) fila[1], (String) fila[2]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Con el lock de escritura
+    private void poner(Long id, String nombre, String descripcion) {
+        Map<String, Float> pesos = pesos(nombre, NOMBRE, NOMBRE_PREFIJO);
+        pesos(descripcion, DESCRIPCION, DESCRIPCION_PREFIJO).forEach((termino, peso) -> pesos.merge(termino, peso, Float::sum));
+
+        String[] terminos = new String[pesos.size()];
+        int i = 0;
+        for (Map.Entry<String, Float> entry : pesos.entrySet()) {
+            Postings lista = indice.computeIfAbsent(entry.getKey(), termino -> new Postings());
+            lista.poner(id, entry.getValue());
+            terminos[i++] = entry.getKey();
+        }
+        terminosPorProducto.put(id, terminos);
+    }
+
+    // Con el lock de escritura
+    private void quitar(Long id) {
+        String[] terminos = terminosPorProducto.remove(id);
+        if (terminos == null) {
+            return;
+        }
+        for (String termino : terminos) {
+            Postings lista = indice.get(termino);
+            if (lista != null && lista.quitar(id) == 0) {
+                indice.remove(termino);
+            }
+        }
+    }
+
+    // Dentro de un campo cuenta la mejor coincidencia de cada término
+    private static Map<String, Float> pesos(String texto, float entera, float prefijo) {
+        Map<String, Float> pesos = new HashMap<>();
+        for (String palabra : palabras(texto)) {
+            pesos.merge(palabra, entera, Math::max);
+            for (int largo = MIN_PREFIJO; largo < palabra.length() && largo <= MAX_PREFIJO; largo++) {
+                pesos.merge(palabra.substring(0, largo), prefijo, Math::max);
+            }
+        }
+        return pesos;
+    }
+
+    private record Resultado(long id, float puntuacion) {
+    }
+
+    // Lista de un término: IDs ordenados y su peso, en arrays primitivos que crecen al doble
+    private static final class Postings {
+        private long[] ids = new long[4];
+        private float[] pesos = new float[4];
+        private int tamano;
+
+        void poner(long id, float peso) {
+            int posicion = Arrays.binarySearch(ids, 0, tamano, id);
+            if (posicion >= 0) {
+                pesos[posicion] = peso;
+                return;
+            }
+            posicion = -posicion - 1;
+            if (tamano == ids.length) {
+                ids = Arrays.copyOf(ids, tamano * 2);
+                pesos = Arrays.copyOf(pesos, tamano * 2);
+            }
+            System.arraycopy(ids, posicion, ids, posicion + 1, tamano - posicion);
+            System.arraycopy(pesos, posicion, pesos, posicion + 1, tamano - posicion);
+            ids[posicion] = id;
+            pesos[posicion] = peso;
+            tamano++;
+        }
+
+        int quitar(long id) {
+            int posicion = Arrays.binarySearch(ids, 0, tamano, id);
+            if (posicion >= 0) {
+                System.arraycopy(ids, posicion + 1, ids, posicion, tamano - posicion - 1);
+                System.arraycopy(pesos, posicion + 1, pesos, posicion, tamano - posicion - 1);
+                tamano--;
+            }
+            return tamano;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.keycloakdemo.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.example.keycloakdemo.dto.PaginaDTO;
+
+/**
+ * Paginación por cursor (keyset): cada página se lee con WHERE id > :after
+ * ORDER BY id LIMIT n, así el coste no depende de lo profunda que sea la página.
+ *
+ * El cursor es opaco para el cliente: "tabla:id" en Base64 URL.
+ */
+public final class Paginas {
+
+    public record Cursor(String tabla, long id) {
+    }
+
+    private Paginas() {
+    }
+
+    // Sin cursor se empieza por tablaInicial; un cursor de otro listado se rechaza
+    public static Cursor leerCursor(String after, String tablaInicial, String... otrasTablas) {
+        if (after == null || after.isBlank()) {
+            return new Cursor(tablaInicial, 0);
+        }
+        Cursor cursor;
+        try {
+            String texto = new String(Base64.getUrlDecoder().decode(after), StandardCharsets.UTF_8);
+            int separador = texto.lastIndexOf(':');
+            cursor = new Cursor(texto.substring(0, separador), Long.parseLong(texto.substring(separador + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Cursor de paginación no válido");
+        }
+        if (!cursor.tabla().equals(tablaInicial) && !Arrays.asList(otrasTablas).contains(cursor.tabla())) {
+            throw new IllegalArgumentException("Cursor de paginación no válido");
+        }
+        return cursor;
+    }
+
+    public static String escribirCursor(String tabla, long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((tabla + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Igual que construir, pero a partir de hasta limite + 1 IDs: cargar recibe los
+     * IDs de la página y devuelve su contenido en el mismo orden.
+     */
+    public static <T> PaginaDTO<T> construirDesdeIds(List<Long> ids, int limite, String tabla,
+            Function<List<Long>, List<T>> cargar) {
+        boolean haySiguiente = ids.size() > limite;
+        List<Long> pagina = haySiguiente ? ids.subList(0, limite) : ids;
+
+        PaginaDTO<T> dto = new PaginaDTO<>();
+        dto.setLimite(limite);
+        dto.setContenido(pagina.isEmpty() ? new ArrayList<>() : new ArrayList<>(cargar.apply(pagina)));
+        if (haySiguiente) {
+            dto.setSiguienteCursor(escribirCursor(tabla, pagina.get(pagina.size() - 1)));
+        }
+        return dto;
+    }
+
+    /**
+     * Construye la página a partir de hasta limite + 1 filas leídas en orden de id:
+     * la fila de más sólo indica que hay página siguiente.
+     */
+    public static <E, T> PaginaDTO<T> construir(List<E> filas, int limite, String tabla,
+            Function<E, Long> id, Function<E, T> mapper) {
+        boolean haySiguiente = filas.size() > limite;
+        List<E> pagina = haySiguiente ? filas.subList(0, limite) : filas;
+
+        PaginaDTO<T> dto = new PaginaDTO<>();
+        dto.setLimite(limite);
+        dto.setContenido(pagina.stream().map(mapper).collect(Collectors.toList()));
+        if (haySiguiente) {
+            dto.setSiguienteCursor(escribirCursor(tabla, id.apply(pagina.get(pagina.size() - 1))));
+        }
+        return dto;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.keycloakdemo.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.keycloakdemo.dto.PedidoRequestDTO;
+import com.example.keycloakdemo.dto.PedidoResponseDTO;
+import com.example.keycloakdemo.dto.SolicitudPedidoResponseDTO;
+import com.example.keycloakdemo.exception.QueueFullException;
+import com.example.keycloakdemo.exception.ResourceNotFoundException;
+import com.example.keycloakdemo.model.EstadoSolicitud;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Aceptación asíncrona de pedidos: la petición se encola en una cola acotada y
+ * responde 202 de inmediato; workers en hilos virtuales ejecutan PedidoService.crear.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PedidoAsyncService {
+
+    private final PedidoService pedidoService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${pedidos.async.capacidad-cola:1000}")
+    private int capacidadCola;
+
+    @Value("${pedidos.async.workers:16}")
+    private int numeroWorkers;
+
+    @Value("${pedidos.async.retencion-minutos:30}")
+    private long retencionMinutos;
+
+    // Último estado conocido de cada solicitud; cada cambio publica un DTO nuevo
+    private final Map<String, SolicitudPedidoResponseDTO> solicitudes = new ConcurrentHashMap<>();
+    private final List<Thread> workers = new ArrayList<>();
+
+    private BlockingQueue<SolicitudEncolada> cola;
+    private Timer esperaEnCola;
+
+    private record SolicitudEncolada(String id, PedidoRequestDTO request, long recibidaNanos) {
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        cola = new ArrayBlockingQueue<>(capacidadCola);
+
+        Gauge.builder("pedidos.solicitudes.cola", cola, BlockingQueue::size)
+                .description("Solicitudes de pedido pendientes de procesar")
+                .register(meterRegistry);
+        esperaEnCola = Timer.builder("pedidos.solicitudes.espera")
+                .description("Tiempo desde que se acepta una solicitud hasta que un worker la toma")
+                .register(meterRegistry);
+
+        for (int i = 0; i < numeroWorkers; i++) {
+            workers.add(Thread.ofVirtual().name("pedido-worker-" + i).start(this::procesar));
+        }
+        log.info("Pedidos asíncronos: {} workers, cola de {} solicitudes", numeroWorkers, capacidadCola);
+    }
+
+    @PreDestroy
+    public void detener() {
+        workers.forEach(Thread::interrupt);
+    }
+
+    public SolicitudPedidoResponseDTO encolar(PedidoRequestDTO request) {
+        String id = UUID.randomUUID().toString();
+        SolicitudPedidoResponseDTO solicitud = new SolicitudPedidoResponseDTO();
+        solicitud.setId(id);
+        solicitud.setEstado(EstadoSolicitud.EN_COLA);
+        solicitud.setFechaRecepcion(LocalDateTime.now());
+        solicitudes.put(id, solicitud);
+
+        if (!cola.offer(new SolicitudEncolada(id, request, System.nanoTime()))) {
+            solicitudes.remove(id);
+            throw new QueueFullException("Demasiadas solicitudes de pedido en curso, reintente en unos segundos");
+        }
+        log.debug("Solicitud de pedido {} encolada para cliente ID: {}", id, request.getClienteId());
+        return solicitud;
+    }
+
+    public SolicitudPedidoResponseDTO obtener(String id) {
+        SolicitudPedidoResponseDTO solicitud = solicitudes.get(id);
+        if (solicitud == null) {
+            throw new ResourceNotFoundException("No se encuentra solicitud de pedido con ID: " + id);
+        }
+        return solicitud;
+    }
+
+    // Olvida las solicitudes terminadas hace más del tiempo de retención
+    @Scheduled(fixedDelay = 60_000)
+    public void purgar() {
+        LocalDateTime limite = LocalDateTime.now().minusMinutes(retencionMinutos);
+        solicitudes.values().removeIf(s -> s.getFechaFin() != null && s.getFechaFin().isBefore(limite));
+    }
+
+    private void procesar() {
+        while (!Thread.currentThread().isInterrupted()) {
+            SolicitudEncolada solicitud;
+            try {
+                solicitud = cola.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            esperaEnCola.record(System.nanoTime() - solicitud.recibidaNanos(), TimeUnit.NANOSECONDS);
+            actualizar(solicitud.id(), EstadoSolicitud.PROCESANDO, null, null);
+
+            try {
+                PedidoResponseDTO pedido = pedidoService.crear(solicitud.request());
+                actualizar(solicitud.id(), EstadoSolicitud.COMPLETADA, pedido, null);
+            } catch (Exception e) {
+                log.warn("Solicitud de pedido {} fallida: {}", solicitud.id(), e.getMessage());
+                actualizar(solicitud.id(), EstadoSolicitud.FALLIDA, null, e.getMessage());
+            }
+        }
+    }
+
+    private void actualizar(String id, EstadoSolicitud estado, PedidoResponseDTO pedido, String error) {
+        solicitudes.computeIfPresent(id, (clave, anterior) -> {
+            SolicitudPedidoResponseDTO nueva = new SolicitudPedidoResponseDTO();
+            nueva.setId(id);
+            nueva.setEstado(estado);
+            nueva.setFechaRecepcion(anterior.getFechaRecepcion());
+            nueva.setPedido(pedido);
+            nueva.setError(error);
+            if (estado == EstadoSolicitud.COMPLETADA || estado == EstadoSolicitud.FALLIDA) {
+                nueva.setFechaFin(LocalDateTime.now());
+            }
+            return nueva;
+        });
+    }
+}
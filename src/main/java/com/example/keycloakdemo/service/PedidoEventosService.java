@@ -0,0 +1,223 @@
+package com.example.keycloakdemo.service;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.example.keycloakdemo.dto.EventoPedidoDTO;
+import com.example.keycloakdemo.event.PedidoCambiadoEvent;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reparto en proceso de los cambios de pedidos a los clientes suscritos por SSE.
+ *
+ * Una conexión inactiva sólo ocupa su SseEmitter (no un hilo). El hilo que
+ * confirma la transacción sólo deja el evento en la cola acotada de cada
+ * suscriptor; lo envía un hilo virtual por suscriptor con cola no vacía, y un
+ * suscriptor que no da abasto y llena su cola se desconecta.
+ *
+ * Los últimos eventos se guardan en un histórico acotado para reenviarlos a
+ * quien reconecte con Last-Event-ID; el cliente debe descartar ids ya recibidos.
+ * Los ids empiezan en cada arranque por encima de los del anterior. Un
+ * Last-Event-ID de antes del arranque, o más antiguo que el histórico, no se
+ * puede reanudar: se envía un evento "reinicio" y el cliente debe volver a
+ * leer sus pedidos.
+ */
+@Service
+@Slf4j
+public class PedidoEventosService {
+
+    @Value("${pedidos.eventos.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${pedidos.eventos.historial:10000}")
+    private int tamanoHistorial;
+
+    @Value("${pedidos.eventos.cola-por-suscriptor:256}")
+    private int colaPorSuscriptor;
+
+    // Milisegundos del arranque por 2^20: cada arranque empieza por encima de los ids del anterior
+    private final long primerId = System.currentTimeMillis() << 20;
+    private final AtomicLong secuencia = new AtomicLong(primerId);
+    private final Map<Long, Set<Suscripcion>> suscriptores = new ConcurrentHashMap<>();
+    private final Deque<EventoPedidoDTO> historial = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger eventosEnHistorial = new AtomicInteger();
+
+    // id es -1 en lo que no es un evento de pedido (latidos, reinicio). Un SseEventBuilder
+    // no se puede enviar dos veces, así que se crea uno por envío
+    private record Envio(long id, Supplier<SseEmitter.SseEventBuilder> evento) {
+    }
+
+    private final class Suscripcion {
+        private final Long clienteId;
+        private final SseEmitter emitter;
+        private final Deque<Envio> cola = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger enCola = new AtomicInteger();
+        // true mientras hay un hilo vaciando la cola (o mientras se prepara el reenvío)
+        private final AtomicBoolean enviando = new AtomicBoolean(true);
+        private volatile boolean cerrada;
+
+        Suscripcion(Long clienteId, SseEmitter emitter) {
+            this.clienteId = clienteId;
+            this.emitter = emitter;
+        }
+
+        // Desde el hilo que confirma: nunca bloquea
+        void encolar(Envio envio) {
+            if (cerrada) {
+                return;
+            }
+            if (enCola.incrementAndGet() > colaPorSuscriptor) {
+                log.warn("Suscripción SSE del cliente {} desconectada: no consume los eventos a tiempo", clienteId);
+                cerrar();
+                return;
+            }
+            cola.addLast(envio);
+            despertar();
+        }
+
+        void despertar() {
+            if (!cola.isEmpty() && enviando.compareAndSet(false, true)) {
+                Thread.ofVirtual().name("sse-cliente-" + clienteId).start(this::vaciar);
+            }
+        }
+
+        private void vaciar() {
+            do {
+                Envio envio;
+                while (!cerrada && (envio = cola.pollFirst()) != null) {
+                    enCola.decrementAndGet();
+                    try {
+                        emitter.send(envio.evento().get());
+                    } catch (IOException | IllegalStateException e) {
+                        log.debug("Suscripción SSE del cliente {} cerrada: {}", clienteId, e.getMessage());
+                        cerrar();
+                    }
+                }
+                enviando.set(false);
+                // un evento encolado justo antes de soltar el indicador no se queda sin enviar
+            } while (!cerrada && !cola.isEmpty() && enviando.compareAndSet(false, true));
+        }
+
+        void cerrar() {
+            cerrada = true;
+            quitar(this);
+            cola.clear();
+            // complete() puede bloquear si hay un envío en curso: fuera del hilo de quien llama
+            Thread.ofVirtual().start(emitter::complete);
+        }
+    }
+
+    public SseEmitter suscribir(Long clienteId, Long ultimoEventoId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Suscripcion suscripcion = new Suscripcion(clienteId, emitter);
+        suscriptores.compute(clienteId, (id, actuales) -> {
+            Set<Suscripcion> conjunto = actuales != null ? actuales : ConcurrentHashMap.newKeySet();
+            conjunto.add(suscripcion);
+            return conjunto;
+        });
+
+        emitter.onCompletion(() -> quitar(suscripcion));
+        emitter.onTimeout(() -> quitar(suscripcion));
+        emitter.onError(e -> quitar(suscripcion));
+
+        // reenviar lo que se perdió mientras estaba desconectado, delante de lo que ya haya llegado
+        if (ultimoEventoId != null) {
+            List<Envio> perdidos = perdidosDesde(clienteId, ultimoEventoId, suscripcion.cola.peekFirst());
+            if (perdidos == null) {
+                perdidos = List.of(new Envio(-1, () -> SseEmitter.event().name("reinicio").data("")));
+            }
+            for (int i = perdidos.size() - 1; i >= 0; i--) {
+                suscripcion.cola.addFirst(perdidos.get(i));
+            }
+            suscripcion.enCola.addAndGet(perdidos.size());
+        }
+        suscripcion.enviando.set(false);
+        suscripcion.despertar();
+        return emitter;
+    }
+
+    /**
+     * Eventos del cliente posteriores a ultimoEventoId y anteriores al primero ya
+     * encolado. null si no se puede reanudar: el id es de antes del arranque, el
+     * histórico ya no llega tan atrás o son más de los que caben en la cola.
+     */
+    private List<Envio> perdidosDesde(Long clienteId, long ultimoEventoId, Envio primeroEnCola) {
+        EventoPedidoDTO masAntiguo = historial.peekFirst();
+        long primeroDisponible = masAntiguo != null ? masAntiguo.getId() : secuencia.get() + 1;
+        if (ultimoEventoId < primerId || ultimoEventoId < primeroDisponible - 1) {
+            return null;
+        }
+        long hasta = primeroEnCola != null && primeroEnCola.id() > 0 ? primeroEnCola.id() : Long.MAX_VALUE;
+        List<Envio> perdidos = new ArrayList<>();
+        for (EventoPedidoDTO evento : historial) {
+            if (evento.getClienteId().equals(clienteId) && evento.getId() > ultimoEventoId && evento.getId() < hasta) {
+                if (perdidos.size() == colaPorSuscriptor / 2) {
+                    return null;
+                }
+                perdidos.add(envio(evento));
+            }
+        }
+        return perdidos;
+    }
+
+    @TransactionalEventListener
+    public void onPedidoCambiado(PedidoCambiadoEvent cambio) {
+        EventoPedidoDTO evento = new EventoPedidoDTO();
+        evento.setId(secuencia.incrementAndGet());
+        evento.setPedidoId(cambio.pedidoId());
+        evento.setClienteId(cambio.clienteId());
+        evento.setEstado(cambio.estado());
+        evento.setTotal(cambio.total());
+        evento.setFecha(LocalDateTime.now());
+
+        historial.addLast(evento);
+        if (eventosEnHistorial.incrementAndGet() > tamanoHistorial && historial.pollFirst() != null) {
+            eventosEnHistorial.decrementAndGet();
+        }
+
+        Set<Suscripcion> conjunto = suscriptores.get(cambio.clienteId());
+        if (conjunto != null) {
+            Envio envio = envio(evento);
+            conjunto.forEach(suscripcion -> suscripcion.encolar(envio));
+        }
+    }
+
+    // Comentario SSE periódico para que proxies y balanceadores no cierren las conexiones inactivas
+    @Scheduled(fixedDelayString = "${pedidos.eventos.heartbeat-ms:15000}")
+    public void latido() {
+        Envio ping = new Envio(-1, () -> SseEmitter.event().comment("ping"));
+        suscriptores.values().forEach(conjunto -> conjunto.forEach(suscripcion -> suscripcion.encolar(ping)));
+    }
+
+    private Envio envio(EventoPedidoDTO evento) {
+        return new Envio(evento.getId(), () -> SseEmitter.event()
+                .id(String.valueOf(evento.getId()))
+                .name("pedido")
+                .data(evento));
+    }
+
+    private void quitar(Suscripcion suscripcion) {
+        suscriptores.computeIfPresent(suscripcion.clienteId, (id, conjunto) -> {
+            conjunto.remove(suscripcion);
+            return conjunto.isEmpty() ? null : conjunto;
+        });
+    }
+}
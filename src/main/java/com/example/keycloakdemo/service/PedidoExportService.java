@@ -0,0 +1,210 @@
+package com.example.keycloakdemo.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.keycloakdemo.model.EstadoPedido;
+import com.example.keycloakdemo.repository.PedidoArchivadoRepository;
+import com.example.keycloakdemo.repository.PedidoRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Exportación de pedidos en NDJSON (un pedido con sus items por línea) o CSV
+ * (una fila por item). Incluye los pedidos archivados y los que no tienen items.
+ * Las filas se leen como valores sueltos de un cursor JDBC y se escriben según
+ * llegan, sin entidades, así la memoria no crece con el número de pedidos exportados.
+ * Primero se recorre pedidos y después pedidos_archivo, cada una en el orden de
+ * sus índices: ordenar la unión de las dos retrasaría el primer byte hasta tenerla
+ * entera ordenada.
+ */
+@Service
+@Slf4j
+public class PedidoExportService {
+
+    public enum Formato {
+        NDJSON, CSV
+    }
+
+    private static final String CABECERA_CSV = "pedido_id,fecha_pedido,estado,cliente_id,cliente_email,total,"
+            + "producto_id,producto_nombre,cantidad,precio_unitario,subtotal";
+    // Sin filtro de fechas se usan estos límites, para no pasar parámetros nulos a la consulta nativa
+    private static final LocalDateTime SIN_DESDE = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime SIN_HASTA = LocalDateTime.of(9999, 12, 31, 0, 0);
+
+    private final PedidoRepository pedidoRepository;
+    private final PedidoArchivadoRepository pedidoArchivadoRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public PedidoExportService(PedidoRepository pedidoRepository, PedidoArchivadoRepository pedidoArchivadoRepository,
+            PlatformTransactionManager transactionManager) {
+        this.pedidoRepository = pedidoRepository;
+        this.pedidoArchivadoRepository = pedidoArchivadoRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        // Las dos consultas sobre la misma foto: un pedido archivado entre una y otra no sale dos veces
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    // Se llama desde el WebAsyncTask de la exportación, fuera de la petición: abre su propia transacción de lectura
+    public void exportar(Formato formato, EstadoPedido estado, LocalDateTime desde, LocalDateTime hasta,
+            OutputStream salida) {
+        long inicio = System.nanoTime();
+        List<String> estados = (estado != null ? Stream.of(estado) : Arrays.stream(EstadoPedido.values()))
+                .map(EstadoPedido::name)
+                .toList();
+        LocalDateTime inicioRango = desde != null ? desde : SIN_DESDE;
+        LocalDateTime finRango = hasta != null ? hasta : SIN_HASTA;
+        int pedidos = transactionTemplate.execute(status -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8));
+            // el cursor de archivados se abre al acabar el de pedidos (flatMap lo cierra al terminar)
+            try (Stream<Object[]> filas = Stream.concat(
+                    pedidoRepository.streamFilasParaExportar(estados, inicioRango, finRango),
+                    Stream.<Supplier<Stream<Object[]>>>of(() -> pedidoArchivadoRepository.streamFilasParaExportar(
+                            estados, inicioRango, finRango)).flatMap(Supplier::get))) {
+                int escritos = formato == Formato.CSV ? escribirCsv(filas.iterator(), writer)
+                        : escribirNdjson(filas.iterator(), writer);
+                writer.flush();
+                return escritos;
+            } catch (IOException e) {
+                // el cliente cortó la descarga
+                throw new UncheckedIOException(e);
+            }
+        });
+        log.info("Exportados {} pedidos en {} en {} ms", pedidos, formato, (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    // fila: [pedido_id, fecha_pedido, estado, cliente_id, email, total, producto_id, nombre,
+    //        cantidad, precio_unitario, subtotal, item_id]; los campos de item son null si el pedido no tiene
+    private int escribirCsv(Iterator<Object[]> filas, Writer writer) throws IOException {
+        writer.write(CABECERA_CSV);
+        writer.write('\n');
+
+        int pedidos = 0;
+        Object pedidoActual = null;
+        while (filas.hasNext()) {
+            Object[] fila = filas.next();
+            if (!fila[0].equals(pedidoActual)) {
+                pedidoActual = fila[0];
+                pedidos++;
+            }
+
+            writer.write(fila[0] + "," + fecha(fila[1]) + "," + fila[2] + "," + fila[3] + ","
+                    + csv((String) fila[4]) + "," + fila[5] + "," + vacio(fila[6]) + ","
+                    + csv((String) fila[7]) + "," + vacio(fila[8]) + "," + vacio(fila[9]) + "," + vacio(fila[10]));
+            writer.write('\n');
+        }
+        return pedidos;
+    }
+
+    // Las filas llegan ordenadas por pedido: se acumulan las del pedido en curso y se escribe al cambiar
+    private int escribirNdjson(Iterator<Object[]> filas, Writer writer) throws IOException {
+        int pedidos = 0;
+        List<Object[]> actual = new ArrayList<>();
+        while (filas.hasNext()) {
+            Object[] fila = filas.next();
+            if (!actual.isEmpty() && !actual.get(0)[0].equals(fila[0])) {
+                escribirPedidoJson(actual, writer);
+                pedidos++;
+                actual.clear();
+            }
+            actual.add(fila);
+        }
+        if (!actual.isEmpty()) {
+            escribirPedidoJson(actual, writer);
+            pedidos++;
+        }
+        return pedidos;
+    }
+
+    private void escribirPedidoJson(List<Object[]> filas, Writer writer) throws IOException {
+        Object[] pedido = filas.get(0);
+        StringBuilder json = new StringBuilder(256)
+                .append("{\"id\":").append(pedido[0])
+                .append(",\"fechaPedido\":").append(json(String.valueOf(fecha(pedido[1]))))
+                .append(",\"estado\":").append(json((String) pedido[2]))
+                .append(",\"clienteId\":").append(pedido[3])
+                .append(",\"clienteEmail\":").append(json((String) pedido[4]))
+                .append(",\"total\":").append(pedido[5])
+                .append(",\"items\":[");
+        boolean primero = true;
+        for (Object[] item : filas) {
+            if (item[11] == null) {
+                // pedido sin items
+                continue;
+            }
+            if (!primero) {
+                json.append(',');
+            }
+            primero = false;
+            json.append("{\"productoId\":").append(item[6])
+                    .append(",\"productoNombre\":").append(json((String) item[7]))
+                    .append(",\"cantidad\":").append(item[8])
+                    .append(",\"precioUnitario\":").append(item[9])
+                    .append(",\"subtotal\":").append(item[10])
+                    .append('}');
+        }
+        json.append("]}\n");
+        writer.write(json.toString());
+    }
+
+    private static LocalDateTime fecha(Object valor) {
+        return valor instanceof Timestamp fecha ? fecha.toLocalDateTime() : (LocalDateTime) valor;
+    }
+
+    private static String vacio(Object valor) {
+        return valor != null ? valor.toString() : "";
+    }
+
+    private static String csv(String valor) {
+        if (valor == null) {
+            return "";
+        }
+        if (valor.contains(",") || valor.contains("\"") || valor.contains("\n")) {
+            return "\"" + valor.replace("\"", "\"\"") + "\"";
+        }
+        return valor;
+    }
+
+    private static String json(String valor) {
+        if (valor == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(valor.length() + 2).append('"');
+        for (char c : valor.toCharArray()) {
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
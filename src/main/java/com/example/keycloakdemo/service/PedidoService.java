@@ -1,26 +1,49 @@
 package com.example.keycloakdemo.service;
 
 import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import com.example.keycloakdemo.dto.ClienteResumenDTO;
+import com.example.keycloakdemo.dto.PaginaDTO;
 import com.example.keycloakdemo.dto.PedidoItemRequestDTO;
 import com.example.keycloakdemo.dto.PedidoItemResponseDTO;
+import com.example.keycloakdemo.dto.PedidoLoteResultadoDTO;
 import com.example.keycloakdemo.dto.PedidoRequestDTO;
 import com.example.keycloakdemo.dto.PedidoResponseDTO;
 import com.example.keycloakdemo.dto.PedidoResumenDTO;
 import com.example.keycloakdemo.dto.ProductoResumenDTO;
+import com.example.keycloakdemo.dto.TransicionLoteResponseDTO;
+import com.example.keycloakdemo.event.PedidoCambiadoEvent;
+import com.example.keycloakdemo.exception.PreconditionFailedException;
 import com.example.keycloakdemo.exception.ResourceNotFoundException;
+import com.example.keycloakdemo.exception.StockInsuficienteException;
 import com.example.keycloakdemo.model.Cliente;
+import com.example.keycloakdemo.model.IdempotenciaPedido;
 import com.example.keycloakdemo.model.Pedido;
+import com.example.keycloakdemo.model.PedidoArchivado;
 import com.example.keycloakdemo.model.PedidoItem;
+import com.example.keycloakdemo.model.PedidoItemArchivado;
 import com.example.keycloakdemo.model.Producto;
 import com.example.keycloakdemo.repository.ClienteRepository;
+import com.example.keycloakdemo.repository.IdempotenciaPedidoRepository;
+import com.example.keycloakdemo.repository.PedidoArchivadoRepository;
 import com.example.keycloakdemo.repository.PedidoRepository;
+import com.example.keycloakdemo.repository.PedidoRepositoryCustom;
 import com.example.keycloakdemo.repository.ProductoRepository;
 import com.example.keycloakdemo.model.EstadoPedido;
 
@@ -34,9 +57,19 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class PedidoService {
 
+    private static final Set<EstadoPedido> CANCELABLES = EstadoPedido.origenesDe(EstadoPedido.CANCELADO);
+    private static final int IDS_POR_CONSULTA = 1000;
+
     private final PedidoRepository pedidoRepository;
     private final ProductoRepository productoRepository;
     private final ClienteRepository clienteRepository;
+    private final FlashSaleService flashSaleService;
+    private final IdempotenciaPedidoRepository idempotenciaPedidoRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PedidoArchivadoRepository pedidoArchivadoRepository;
+    private final CatalogoCache catalogoCache;
+    private final ResumenCategoriaService resumenCategoriaService;
+    private final VentasService ventasService;
 
     public PedidoResponseDTO crear(PedidoRequestDTO request) {
         log.info("Creando pedido para cliente ID: {}", request.getClienteId());
@@ -52,22 +85,59 @@ public class PedidoService {
         pedido.setFechaPedido(LocalDateTime.now());
         pedido.setEstado(EstadoPedido.PENDIENTE);
 
-        // 3. Procesar items y calcular total
-        BigDecimal total = BigDecimal.ZERO;
+        // 3. Reservar stock línea a línea: comprobación y descuento en un único UPDATE,
+        //    así dos pedidos concurrentes del mismo producto no pueden sobrevender.
+        //    Los productos en venta flash se reservan en memoria sin tocar su fila.
+        List<PedidoItemRequestDTO> lineas = request.getItems();
+        List<Integer> lineasSinStock = new ArrayList<>();
+        for (int i = 0; i < lineas.size(); i++) {
+            PedidoItemRequestDTO itemDto = lineas.get(i);
+            Long productoId = itemDto.getProductoId();
+            boolean reservado = flashSaleService.esFlash(productoId)
+                    ? flashSaleService.reservar(Map.of(productoId, itemDto.getCantidad()))
+                    : productoRepository.descontarStock(productoId, itemDto.getCantidad()) > 0;
+            if (!reservado) {
+                lineasSinStock.add(i);
+            }
+        }
+
+        // 4. Cargar los productos ya descontados (una sola consulta)
+        Map<Long, Producto> productos = productoRepository.findAllById(lineas.stream()
+                .map(PedidoItemRequestDTO::getProductoId)
+                .collect(Collectors.toSet()))
+            .stream()
+            .collect(Collectors.toMap(Producto::getId, Function.identity()));
 
-        for (PedidoItemRequestDTO itemDto : request.getItems()) {
-            // buscar producto
-            Producto producto = productoRepository.findById(itemDto.getProductoId())
-                .orElseThrow(() -> new ResourceNotFoundException("No se encuentra producto con ID: " + itemDto.getProductoId()));
-
-            // verificar stock
-            if (producto.getStock() < itemDto.getCantidad()) {
-                throw new IllegalStateException(
-                    String.format("Stock insuficiente para producto '%s'. Stock actual; %d, solicitado %d",
-                        producto.getNombre(), producto.getStock(), itemDto.getCantidad()
-                    )
-                );
+        for (PedidoItemRequestDTO itemDto : lineas) {
+            if (!productos.containsKey(itemDto.getProductoId())) {
+                throw new ResourceNotFoundException("No se encuentra producto con ID: " + itemDto.getProductoId());
             }
+        }
+
+        // si alguna línea falló se lanza la excepción y la transacción deshace el resto de descuentos
+        if (!lineasSinStock.isEmpty()) {
+            throw new StockInsuficienteException(lineasSinStock.stream()
+                    .map(i -> {
+                        PedidoItemRequestDTO itemDto = lineas.get(i);
+                        Producto producto = productos.get(itemDto.getProductoId());
+                        int disponible = flashSaleService.esFlash(producto.getId())
+                                ? (int) flashSaleService.getDisponible(producto.getId())
+                                : producto.getStock();
+                        return new StockInsuficienteException.LineaSinStock(i, producto.getId(),
+                                producto.getNombre(), itemDto.getCantidad(), disponible);
+                    })
+                    .collect(Collectors.toList()));
+        }
+
+        catalogoCache.productosCambiados(productos.keySet().stream()
+                .filter(id -> !flashSaleService.esFlash(id))
+                .collect(Collectors.toList()));
+
+        // 5. Crear items y calcular total
+        BigDecimal total = BigDecimal.ZERO;
+
+        for (PedidoItemRequestDTO itemDto : lineas) {
+            Producto producto = productos.get(itemDto.getProductoId());
 
             // crear item
             PedidoItem item = new PedidoItem();
@@ -83,76 +153,458 @@ public class PedidoService {
             pedido.getItems().add(item);
             total = total.add(subtotal);
 
-            // descontar stock
-            producto.setStock(producto.getStock() - itemDto.getCantidad());
-            productoRepository.save(producto);
+            if (!flashSaleService.esFlash(producto.getId()) && producto.getCategoria() != null) {
+                resumenCategoriaService.stockCambiado(producto.getCategoria().getId(), -itemDto.getCantidad());
+            }
         }
 
         pedido.setTotal(total);
 
-        // 4. Guardar pedido (cascade guardará los items automáticamente)
+        // 6. Guardar pedido (cascade guardará los items automáticamente)
         Pedido guardado = pedidoRepository.save(pedido);
+        ventasService.pedidosCreados(List.of(guardado));
         log.info("Pedido creado con ID: {}, total {}", guardado.getId(), guardado.getTotal());
+        publicarCambio(guardado);
 
         return toResponseDTO(guardado);
     }
 
-    public List<PedidoResponseDTO> listarTodos() {
-        return pedidoRepository.findAll().stream()
-                .map(this::toResponseDTO)
-                .collect(Collectors.toList());
+    // Crea el pedido y registra su Idempotency-Key en la misma transacción.
+    // Si otra petición registró la clave a la vez, el INSERT falla y se deshace todo.
+    public PedidoResponseDTO crearIdempotente(String clave, String huella, PedidoRequestDTO request) {
+        PedidoResponseDTO pedido = crear(request);
+
+        IdempotenciaPedido registro = new IdempotenciaPedido();
+        registro.setClave(clave);
+        registro.setPedidoId(pedido.getId());
+        registro.setHuella(huella);
+        idempotenciaPedidoRepository.saveAndFlush(registro);
+
+        return pedido;
+    }
+
+    /**
+     * Crea un lote de pedidos en una sola transacción. Carga clientes y productos
+     * una única vez, y un pedido rechazado no impide crear los demás.
+     */
+    public List<PedidoLoteResultadoDTO> crearLote(List<PedidoRequestDTO> requests) {
+        log.info("Creando lote de {} pedidos", requests.size());
+
+        // 1. Cargar de una vez todos los clientes y productos referenciados
+        Map<Long, Cliente> clientes = clienteRepository.findAllById(requests.stream()
+                .map(PedidoRequestDTO::getClienteId)
+                .collect(Collectors.toSet()))
+            .stream()
+            .collect(Collectors.toMap(Cliente::getId, Function.identity()));
+
+        // los productos se bloquean para que el stock en memoria sea el real durante todo el lote
+        Map<Long, Producto> productos = productoRepository.findAllByIdParaActualizar(requests.stream()
+                .flatMap(r -> r.getItems().stream())
+                .map(PedidoItemRequestDTO::getProductoId)
+                .collect(Collectors.toSet()))
+            .stream()
+            .collect(Collectors.toMap(Producto::getId, Function.identity()));
+
+        // 2. Validar cada pedido contra el stock que van dejando los anteriores
+        List<PedidoLoteResultadoDTO> resultados = new ArrayList<>();
+        List<Pedido> aceptados = new ArrayList<>();
+        List<PedidoLoteResultadoDTO> resultadosAceptados = new ArrayList<>();
+
+        for (int i = 0; i < requests.size(); i++) {
+            PedidoRequestDTO request = requests.get(i);
+            PedidoLoteResultadoDTO resultado = new PedidoLoteResultadoDTO();
+            resultado.setIndice(i);
+            resultados.add(resultado);
+
+            String error = validarPedidoLote(request, clientes, productos);
+            if (error != null) {
+                resultado.setCreado(false);
+                resultado.setError(error);
+                continue;
+            }
+
+            Pedido pedido = new Pedido();
+            pedido.setCliente(clientes.get(request.getClienteId()));
+            pedido.setFechaPedido(LocalDateTime.now());
+            pedido.setEstado(EstadoPedido.PENDIENTE);
+
+            BigDecimal total = BigDecimal.ZERO;
+            for (PedidoItemRequestDTO itemDto : request.getItems()) {
+                Producto producto = productos.get(itemDto.getProductoId());
+
+                PedidoItem item = new PedidoItem();
+                item.setPedido(pedido);
+                item.setProducto(producto);
+                item.setCantidad(itemDto.getCantidad());
+                item.setPrecioUnitario(producto.getPrecio());
+
+                BigDecimal subtotal = producto.getPrecio()
+                    .multiply(BigDecimal.valueOf(itemDto.getCantidad()));
+                item.setSubtotal(subtotal);
+
+                pedido.getItems().add(item);
+                total = total.add(subtotal);
+
+                // el UPDATE de cada producto se emite una sola vez al hacer flush, agrupado en lotes JDBC
+                if (!flashSaleService.esFlash(producto.getId())) {
+                    producto.setStock(producto.getStock() - itemDto.getCantidad());
+                    if (producto.getCategoria() != null) {
+                        resumenCategoriaService.stockCambiado(producto.getCategoria().getId(), -itemDto.getCantidad());
+                    }
+                }
+            }
+            pedido.setTotal(total);
+
+            resultado.setCreado(true);
+            aceptados.add(pedido);
+            resultadosAceptados.add(resultado);
+        }
+
+        catalogoCache.productosCambiados(aceptados.stream()
+                .flatMap(p -> p.getItems().stream())
+                .map(item -> item.getProducto().getId())
+                .filter(id -> !flashSaleService.esFlash(id))
+                .collect(Collectors.toSet()));
+
+        // 3. Persistir todos los pedidos aceptados (los INSERT se agrupan en lotes JDBC)
+        List<Pedido> guardados = pedidoRepository.saveAll(aceptados);
+        ventasService.pedidosCreados(guardados);
+        for (int i = 0; i < guardados.size(); i++) {
+            resultadosAceptados.get(i).setPedido(toResponseDTO(guardados.get(i)));
+            publicarCambio(guardados.get(i));
+        }
+
+        log.info("Lote procesado: {} pedidos creados, {} rechazados",
+                guardados.size(), requests.size() - guardados.size());
+
+        return resultados;
+    }
+
+    // Devuelve el motivo de rechazo del pedido, o null si se puede crear.
+    // Si se puede crear, deja ya reservadas las unidades de los productos en venta flash.
+    private String validarPedidoLote(PedidoRequestDTO request, Map<Long, Cliente> clientes,
+            Map<Long, Producto> productos) {
+
+        if (!clientes.containsKey(request.getClienteId())) {
+            return "No se encuentra cliente con ID: " + request.getClienteId();
+        }
+
+        // un mismo producto puede aparecer en varias líneas del pedido
+        Map<Long, Integer> cantidades = request.getItems().stream()
+            .collect(Collectors.groupingBy(PedidoItemRequestDTO::getProductoId,
+                    Collectors.summingInt(PedidoItemRequestDTO::getCantidad)));
+
+        Map<Long, Integer> cantidadesFlash = new HashMap<>();
+        for (Map.Entry<Long, Integer> entry : cantidades.entrySet()) {
+            Producto producto = productos.get(entry.getKey());
+            if (producto == null) {
+                return "No se encuentra producto con ID: " + entry.getKey();
+            }
+            if (flashSaleService.esFlash(producto.getId())) {
+                cantidadesFlash.put(producto.getId(), entry.getValue());
+            } else if (producto.getStock() < entry.getValue()) {
+                return String.format("Stock insuficiente para producto '%s'. Stock actual: %d, solicitado %d",
+                        producto.getNombre(), producto.getStock(), entry.getValue());
+            }
+        }
+
+        if (!cantidadesFlash.isEmpty() && !flashSaleService.reservar(cantidadesFlash)) {
+            return "Stock insuficiente para uno o más productos en venta flash";
+        }
+        return null;
+    }
+
+    /**
+     * Página de pedidos por cursor. Con incluirArchivados, al acabar la tabla
+     * pedidos se sigue por pedidos_archivo (el cursor indica en cuál está).
+     */
+    public PaginaDTO<PedidoResponseDTO> listarPagina(int limite, String after, boolean incluirArchivados) {
+        Paginas.Cursor cursor = Paginas.leerCursor(after, "pedidos", "pedidos_archivo");
+
+        if (cursor.tabla().equals("pedidos_archivo")) {
+            if (!incluirArchivados) {
+                throw new IllegalArgumentException("El cursor pertenece al listado con incluirArchivados=true");
+            }
+            return Paginas.construirDesdeIds(
+                    pedidoArchivadoRepository.findIdsByIdGreaterThan(cursor.id(), Limit.of(limite + 1)),
+                    limite, "pedidos_archivo", this::cargarArchivados);
+        }
+
+        // 2 consultas por página: IDs con LIMIT y detalle de esos IDs
+        List<Long> ids = pedidoRepository.findIdsByIdGreaterThan(cursor.id(), Limit.of(limite + 1));
+        PaginaDTO<PedidoResponseDTO> pagina = Paginas.construirDesdeIds(ids, limite, "pedidos", this::cargarPedidos);
+
+        // última página de pedidos: se completa con los primeros archivados
+        if (incluirArchivados && pagina.getSiguienteCursor() == null) {
+            int restantes = limite - ids.size();
+            if (restantes == 0) {
+                pagina.setSiguienteCursor(Paginas.escribirCursor("pedidos_archivo", 0));
+            } else {
+                PaginaDTO<PedidoResponseDTO> archivados = Paginas.construirDesdeIds(
+                        pedidoArchivadoRepository.findIdsByIdGreaterThan(0L, Limit.of(restantes + 1)),
+                        restantes, "pedidos_archivo", this::cargarArchivados);
+                pagina.getContenido().addAll(archivados.getContenido());
+                pagina.setSiguienteCursor(archivados.getSiguienteCursor());
+            }
+        }
+        return pagina;
+    }
+
+    // Con ?fields=: sólo se leen las columnas y asociaciones de los campos pedidos
+    public PaginaDTO<Map<String, Object>> listarPaginaCampos(int limite, String after, String fields) {
+        Set<String> campos = Campos.leer(fields, PedidoRepositoryCustom.CAMPOS);
+        Paginas.Cursor cursor = Paginas.leerCursor(after, "pedidos");
+        List<Map<String, Object>> pedidos = pedidoRepository.findCampos(campos, cursor.id(), limite + 1);
+        return Paginas.construir(pedidos, limite, "pedidos", fila -> (Long) fila.get("id"), Function.identity());
     }
 
     public PedidoResponseDTO obtenerPorId(Long id) {
-        Pedido pedido = pedidoRepository.findById(id)
+        return obtenerPorId(id, false);
+    }
+
+    public PedidoResponseDTO obtenerPorId(Long id, boolean incluirArchivados) {
+        return pedidoRepository.findWithItemsById(id)
+                .map(this::toResponseDTO)
+                .or(() -> incluirArchivados
+                        ? pedidoArchivadoRepository.findWithItemsById(id).map(this::toResponseDTO)
+                        : Optional.empty())
                 .orElseThrow(() -> new ResourceNotFoundException("Pedido no encontrado"));
-        return toResponseDTO(pedido);
     }
 
-    public List<PedidoResponseDTO> listarPorCliente(Long clienteId) {
+    public List<PedidoResponseDTO> listarPorCliente(Long clienteId, boolean incluirArchivados) {
 
         if(!clienteRepository.existsById(clienteId)) {
             throw new ResourceNotFoundException("Cliente no encontrado con ID: " + clienteId);
         }
 
-        return pedidoRepository.findByClienteId(clienteId).stream()
+        List<PedidoResponseDTO> pedidos = pedidoRepository.findByClienteIdWithItems(clienteId).stream()
             .map(this::toResponseDTO)
             .collect(Collectors.toList());
+        if (incluirArchivados) {
+            pedidoArchivadoRepository.findByClienteIdWithItems(clienteId).forEach(archivado -> pedidos.add(toResponseDTO(archivado)));
+        }
+        return pedidos;
     }
 
-    public PedidoResponseDTO actualizarEstado(Long id, EstadoPedido nuevoEstado) {
+    private List<PedidoResponseDTO> cargarPedidos(List<Long> ids) {
+        return pedidoRepository.findAllWithItemsAndProductosByIdIn(ids).stream()
+                .map(this::toResponseDTO)
+                .collect(Collectors.toList());
+    }
+
+    private List<PedidoResponseDTO> cargarArchivados(List<Long> ids) {
+        return pedidoArchivadoRepository.findAllWithItemsAndProductosByIdIn(ids).stream()
+                .map(this::toResponseDTO)
+                .collect(Collectors.toList());
+    }
+
+    // Sólo los pedidos activos; los archivados no cambian y no tienen versión
+    public Optional<Long> buscarVersion(Long id) {
+        return pedidoRepository.findVersionById(id);
+    }
+
+    // versionEsperada viene de If-Match; null si la petición no la trae
+    public PedidoResponseDTO actualizarEstado(Long id, EstadoPedido nuevoEstado, Long versionEsperada) {
+        // cancelar implica devolver stock
+        if (nuevoEstado == EstadoPedido.CANCELADO) {
+            if (versionEsperada != null) {
+                comprobarVersion(id, pedidoRepository.findVersionById(id)
+                        .orElseThrow(() -> new ResourceNotFoundException("No se encuentra Pedido con ID: " + id)),
+                        versionEsperada);
+            }
+            cancelar(id);
+            return obtenerPorId(id);
+        }
+
         Pedido pedido = pedidoRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("No se encuentra Pedido con ID: " + id));
+        if (versionEsperada != null) {
+            comprobarVersion(id, pedido.getVersion(), versionEsperada);
+        }
         EstadoPedido estadoAnterior = pedido.getEstado();
+        if (!estadoAnterior.puedePasarA(nuevoEstado)) {
+            throw new IllegalStateException(
+                    String.format("No se puede pasar un pedido de %s a %s", estadoAnterior, nuevoEstado));
+        }
         pedido.setEstado(nuevoEstado);
 
-        Pedido actualizado = pedidoRepository.save(pedido);
+        // flush para que la respuesta lleve ya la versión nueva (y falle aquí si otro la cambió)
+        Pedido actualizado = pedidoRepository.saveAndFlush(pedido);
         log.info("Pedido {} cambió de estado: {} -> {}", id, estadoAnterior, nuevoEstado);
+        publicarCambio(actualizado);
 
         return toResponseDTO(actualizado);
     }
 
+    private void comprobarVersion(Long id, Long actual, Long esperada) {
+        if (!esperada.equals(actual)) {
+            throw new PreconditionFailedException(String.format(
+                    "El pedido %d ha cambiado: versión actual %d, If-Match %d", id, actual, esperada));
+        }
+    }
+
+    /**
+     * Pasa a destino todos los pedidos cuyo estado actual lo permite, con un
+     * UPDATE ... WHERE estado IN (origenes) por bloque. Devuelve los IDs rechazados.
+     */
+    public TransicionLoteResponseDTO actualizarEstadoVarios(Collection<Long> ids, EstadoPedido destino) {
+        if (destino == EstadoPedido.CANCELADO) {
+            throw new IllegalArgumentException(
+                    "Para cancelar pedidos use POST /api/pedidos/cancelaciones, que devuelve el stock");
+        }
+        Set<EstadoPedido> origenes = EstadoPedido.origenesDe(destino);
+
+        List<Long> unicos = new ArrayList<>(new LinkedHashSet<>(ids));
+        Set<Long> actualizados = new LinkedHashSet<>();
+
+        for (int desde = 0; desde < unicos.size(); desde += IDS_POR_CONSULTA) {
+            List<Long> bloque = unicos.subList(desde, Math.min(desde + IDS_POR_CONSULTA, unicos.size()));
+
+            List<Long> candidatos = pedidoRepository.findIdsByIdInAndEstadoIn(bloque, origenes);
+            if (candidatos.isEmpty()) {
+                continue;
+            }
+            int filas = pedidoRepository.actualizarEstado(candidatos, origenes, destino);
+
+            List<Long> cambiados = filas == candidatos.size()
+                    ? candidatos
+                    // otro proceso cambió algún candidato entre la consulta y el UPDATE
+                    : pedidoRepository.findIdsByIdInAndEstadoIn(candidatos, Set.of(destino));
+            actualizados.addAll(cambiados);
+            publicarCambios(cambiados);
+        }
+
+        TransicionLoteResponseDTO dto = new TransicionLoteResponseDTO();
+        dto.setEstado(destino);
+        dto.setActualizados(new ArrayList<>(actualizados));
+        dto.setRechazados(unicos.stream()
+                .filter(id -> !actualizados.contains(id))
+                .collect(Collectors.toList()));
+
+        log.info("Transición masiva a {}: {} pedidos actualizados, {} rechazados",
+                destino, actualizados.size(), dto.getRechazados().size());
+        return dto;
+    }
+
     public void cancelar(Long id) {
-        Pedido pedido = pedidoRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("No se encuentra Pedido con ID: " + id));
+        cancelarVarios(List.of(id));
+        log.info("Pedido {} cancelado. Stock devuelto.", id);
+    }
+
+    /**
+     * Cancela todos los pedidos indicados o ninguno. Las reglas de estado se
+     * comprueban con una sola consulta y el stock se devuelve agrupado por producto.
+     */
+    public void cancelarVarios(Collection<Long> ids) {
+        Set<Long> pendientes = new LinkedHashSet<>(ids);
+
+        // 1. Comprobar existencia y estado de todos los pedidos en una consulta
+        Map<Long, EstadoPedido> estados = pedidoRepository.findEstadosByIdIn(pendientes).stream()
+                .collect(Collectors.toMap(fila -> (Long) fila[0], fila -> (EstadoPedido) fila[1]));
+
+        List<Long> noEncontrados = pendientes.stream()
+                .filter(id -> !estados.containsKey(id))
+                .collect(Collectors.toList());
+        if (!noEncontrados.isEmpty()) {
+            throw new ResourceNotFoundException("No se encuentra Pedido con ID: " + noEncontrados);
+        }
 
         // solo se puede cancelar si está PENDIENTE o CONFIRMADO
-        if (pedido.getEstado() == EstadoPedido.ENVIADO ||
-                pedido.getEstado() == EstadoPedido.ENTREGADO) {
-            throw new IllegalStateException("No se puede cancelar un pedido que ya fue enviado o entregado");
+        List<Long> noCancelables = pendientes.stream()
+                .filter(id -> !CANCELABLES.contains(estados.get(id)))
+                .collect(Collectors.toList());
+        if (!noCancelables.isEmpty()) {
+            throw new IllegalStateException(pendientes.size() == 1
+                    ? "No se puede cancelar un pedido que ya fue enviado, entregado o cancelado"
+                    : "No se pueden cancelar los pedidos ya enviados, entregados o cancelados: " + noCancelables);
         }
 
-        // devolver stock
-        for (PedidoItem item : pedido.getItems()) {
-            Producto producto = item.getProducto();
-            producto.setStock(producto.getStock() + item.getCantidad());
-            productoRepository.save(producto);
+        // 2. Cambiar estado de forma condicional: si otro proceso cambió alguno entre medias se deshace todo
+        int cancelados = pedidoRepository.actualizarEstado(pendientes, CANCELABLES, EstadoPedido.CANCELADO);
+        if (cancelados != pendientes.size()) {
+            throw new IllegalStateException("Algún pedido cambió de estado durante la cancelación, vuelva a intentarlo");
         }
 
-        // cambiar estado
-        pedido.setEstado(EstadoPedido.CANCELADO);
-        pedidoRepository.save(pedido);
-        log.info("Pedido {} cancelado. Stock devuelto.", id);
+        // 3. Devolver stock con un UPDATE agrupado por producto
+        devolverStock(pendientes);
+        ventasService.pedidosCancelados(pendientes);
+        publicarCambios(pendientes);
+        log.info("{} pedidos cancelados. Stock devuelto.", cancelados);
+    }
+
+    /**
+     * Cancela los pedidos indicados que sigan PENDIENTE con fecha anterior o igual
+     * a limite y devuelve su stock. Devuelve cuántos se cancelaron.
+     */
+    public int expirarPendientes(Collection<Long> ids, LocalDateTime limite) {
+        List<Long> vencidos = pedidoRepository.findIdsByIdInAndEstadoAndFechaPedidoHasta(
+                ids, EstadoPedido.PENDIENTE, limite);
+        if (vencidos.isEmpty()) {
+            return 0;
+        }
+
+        int cancelados = pedidoRepository.actualizarEstado(vencidos, Set.of(EstadoPedido.PENDIENTE), EstadoPedido.CANCELADO);
+        if (cancelados != vencidos.size()) {
+            throw new IllegalStateException("Algún pedido cambió de estado durante la caducidad");
+        }
+
+        devolverStock(vencidos);
+        ventasService.pedidosCancelados(vencidos);
+        publicarCambios(vencidos);
+        return cancelados;
+    }
+
+    private void devolverStock(Collection<Long> pedidoIds) {
+        Map<Long, Integer> cantidades = pedidoRepository.sumarCantidadesPorProducto(pedidoIds).stream()
+                .collect(Collectors.toMap(fila -> (Long) fila[0], fila -> ((Number) fila[1]).intValue()));
+
+        productoRepository.sumarStock(cantidades);
+        resumenCategoriaService.stockCambiadoPorProducto(cantidades);
+        catalogoCache.productosCambiados(cantidades.keySet());
+        cantidades.forEach(flashSaleService::liberarTrasCommit);
+    }
+
+    /**
+     * Para usar en ClienteService: totales y últimos max pedidos de cada cliente,
+     * agregados en la base de datos (dos consultas para todos los clientes).
+     */
+    public Map<Long, ResumenPedidosCliente> resumirPorCliente(Collection<Long> clienteIds, int max) {
+        if (clienteIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, List<PedidoResumenDTO>> ultimos = pedidoRepository.findUltimosPorCliente(clienteIds, max).stream()
+                .collect(Collectors.groupingBy(fila -> ((Number) fila[1]).longValue(),
+                        Collectors.mapping(this::toPedidoResumenDTO, Collectors.toList())));
+
+        Map<Long, ResumenPedidosCliente> resumenes = new HashMap<>();
+        for (Object[] fila : pedidoRepository.resumirPorCliente(clienteIds)) {
+            Long clienteId = (Long) fila[0];
+            resumenes.put(clienteId, new ResumenPedidosCliente((Long) fila[1], (BigDecimal) fila[2],
+                    (LocalDateTime) fila[3], ultimos.getOrDefault(clienteId, List.of())));
+        }
+        return resumenes;
+    }
+
+    public record ResumenPedidosCliente(long numeroPedidos, BigDecimal totalPedidos,
+            LocalDateTime fechaUltimoPedido, List<PedidoResumenDTO> ultimos) {
+    }
+
+    // Los oyentes (SSE, etc.) reciben el evento sólo si la transacción confirma
+    private void publicarCambio(Pedido pedido) {
+        eventPublisher.publishEvent(new PedidoCambiadoEvent(
+                pedido.getId(), pedido.getCliente().getId(), pedido.getEstado(), pedido.getTotal(),
+                pedido.getFechaPedido(), pedido.getItems().stream().mapToInt(PedidoItem::getCantidad).sum()));
+    }
+
+    private void publicarCambios(Collection<Long> pedidoIds) {
+        if (pedidoIds.isEmpty()) {
+            return;
+        }
+        for (Object[] fila : pedidoRepository.findDatosEventoByIdIn(pedidoIds)) {
+            eventPublisher.publishEvent(new PedidoCambiadoEvent(
+                    (Long) fila[0], (Long) fila[1], (EstadoPedido) fila[2], (BigDecimal) fila[3],
+                    (LocalDateTime) fila[4], ((Number) fila[5]).intValue()));
+        }
     }
 
     private PedidoResponseDTO toResponseDTO(Pedido pedido) {
@@ -162,6 +614,8 @@ public class PedidoService {
         dto.setFechaPedido(pedido.getFechaPedido());
         dto.setEstado(pedido.getEstado());
         dto.setTotal(pedido.getTotal());
+        dto.setArchivado(false);
+        dto.setVersion(pedido.getVersion());
 
         // mapear items
         if (pedido.getItems() != null && !pedido.getItems().isEmpty()) {
@@ -173,6 +627,24 @@ public class PedidoService {
         return dto;
     }
 
+    private PedidoResponseDTO toResponseDTO(PedidoArchivado pedido) {
+        PedidoResponseDTO dto = new PedidoResponseDTO();
+        dto.setId(pedido.getId());
+        dto.setCliente(toClienteResumenDTO(pedido.getCliente()));
+        dto.setFechaPedido(pedido.getFechaPedido());
+        dto.setEstado(pedido.getEstado());
+        dto.setTotal(pedido.getTotal());
+        dto.setArchivado(true);
+
+        if (pedido.getItems() != null && !pedido.getItems().isEmpty()) {
+            dto.setItems(pedido.getItems().stream()
+                    .map(this::toItemResponseDTO)
+                    .collect(Collectors.toList()));
+        }
+
+        return dto;
+    }
+
     private PedidoItemResponseDTO toItemResponseDTO(PedidoItem item) {
         PedidoItemResponseDTO dto = new PedidoItemResponseDTO();
         dto.setId(item.getId());
@@ -183,6 +655,16 @@ public class PedidoService {
         return dto;
     }
 
+    private PedidoItemResponseDTO toItemResponseDTO(PedidoItemArchivado item) {
+        PedidoItemResponseDTO dto = new PedidoItemResponseDTO();
+        dto.setId(item.getId());
+        dto.setProducto(toProductoResumenDTO(item.getProducto()));
+        dto.setCantidad(item.getCantidad());
+        dto.setPrecioUnitario(item.getPrecioUnitario());
+        dto.setSubtotal(item.getSubtotal());
+        return dto;
+    }
+
     private ClienteResumenDTO toClienteResumenDTO(Cliente cliente) {
         ClienteResumenDTO dto = new ClienteResumenDTO();
         dto.setId(cliente.getId());
@@ -200,20 +682,14 @@ public class PedidoService {
         return dto;
     }
 
-    // Para usar en ClienteService al devolver pedidos del cliente
-    public PedidoResumenDTO toPedidoResumenDTO(Pedido pedido) {
+    // Fila: [id, cliente_id, fecha_pedido, estado, total, cantidad_items]
+    private PedidoResumenDTO toPedidoResumenDTO(Object[] fila) {
         PedidoResumenDTO dto = new PedidoResumenDTO();
-        dto.setId(pedido.getId());
-        dto.setFechaPedido(pedido.getFechaPedido());
-        dto.setTotal(pedido.getTotal());
-        dto.setEstado(pedido.getEstado());
-
-        // Calcular cantidad total de items
-        int cantidadTotal = pedido.getItems().stream()
-                .mapToInt(PedidoItem::getCantidad)
-                .sum();
-        dto.setCantidadItems(cantidadTotal);
-
+        dto.setId(((Number) fila[0]).longValue());
+        dto.setFechaPedido(fila[2] instanceof Timestamp fecha ? fecha.toLocalDateTime() : (LocalDateTime) fila[2]);
+        dto.setEstado(fila[3] != null ? EstadoPedido.valueOf(fila[3].toString()) : null);
+        dto.setTotal((BigDecimal) fila[4]);
+        dto.setCantidadItems(((Number) fila[5]).intValue());
         return dto;
     }
 
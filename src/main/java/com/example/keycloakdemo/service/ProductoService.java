@@ -1,18 +1,33 @@
 package com.example.keycloakdemo.service;
 
 import com.example.keycloakdemo.dto.CategoriaResumenDTO;
+import com.example.keycloakdemo.dto.FacetaCategoriaDTO;
+import com.example.keycloakdemo.dto.FacetaPrecioDTO;
+import com.example.keycloakdemo.dto.PaginaDTO;
 import com.example.keycloakdemo.dto.ProductoRequestDTO;
 import com.example.keycloakdemo.dto.ProductoResponseDTO;
 import com.example.keycloakdemo.dto.ProductoResumenDTO;
+import com.example.keycloakdemo.dto.ProductosFiltradosDTO;
+import com.example.keycloakdemo.exception.PreconditionFailedException;
 import com.example.keycloakdemo.exception.ResourceNotFoundException;
 import com.example.keycloakdemo.model.*;
 import com.example.keycloakdemo.repository.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,9 +38,25 @@ public class ProductoService {
 
     private final ProductoRepository repo;
     private final CategoriaRepository categoriaRepository;
+    private final FlashSaleService flashSaleService;
+    private final CatalogoCache catalogoCache;
+    private final IndiceProductos indiceProductos;
+    private final ResumenCategoriaService resumenCategoriaService;
+
+    // Límites de los tramos de la faceta de precio
+    @Value("${productos.filtro.tramos-precio:10,25,50,100,250}")
+    private String tramosPrecio;
+
+    @Value("${productos.filtro.max-coincidencias-nombre:5000}")
+    private int maxCoincidenciasNombre;
 
     public Producto crearProducto(Producto producto) {
-        return repo.save(producto);
+        Producto guardado = repo.save(producto);
+        if (guardado.getCategoria() != null) {
+            resumenCategoriaService.productoAnadido(guardado.getCategoria().getId(), guardado.getStock());
+        }
+        catalogoCache.productosAnadidosOBorrados(List.of(guardado.getId()));
+        return guardado;
     }
 
     public ProductoResponseDTO crearProducto(ProductoRequestDTO request) {
@@ -42,6 +73,8 @@ public class ProductoService {
         producto.setStock(request.getStock());
 
         Producto guardado = repo.save(producto);
+        resumenCategoriaService.productoAnadido(categoria.getId(), guardado.getStock());
+        catalogoCache.productosAnadidosOBorrados(List.of(guardado.getId()));
         log.info("Producto creado con ID: {}", guardado.getId());
 
         return toResponseDTO(producto);
@@ -61,50 +94,226 @@ public class ProductoService {
         dto.setPrecio(producto.getPrecio());
         dto.setStock(producto.getStock());
         dto.setCategoria(cDto);
+        dto.setVersion(producto.getVersion());
+
+        return dto;
+    }
+
+    private ProductoResponseDTO toResponseDTO(ProductoCatalogo producto) {
+        ProductoResponseDTO dto = new ProductoResponseDTO();
+        dto.setId(producto.id());
+        dto.setNombre(producto.nombre());
+        dto.setDescripcion(producto.descripcion());
+        dto.setPrecio(producto.precio());
+        dto.setStock(producto.stock());
+        dto.setVersion(producto.version());
+
+        if (producto.categoriaId() != null) {
+            CategoriaResumenDTO cDto = new CategoriaResumenDTO();
+            cDto.setId(producto.categoriaId());
+            cDto.setNombre(producto.categoriaNombre());
+            dto.setCategoria(cDto);
+        }
 
         return dto;
     }
 
-    public List<ProductoResponseDTO> obtenerTodos() {
-        List<Producto> productos = repo.findAll();
+    // Lecturas de catálogo: desde CatalogoCache; lo que falta, con proyecciones en transacción de sólo lectura
+    @Transactional(readOnly = true)
+    public PaginaDTO<ProductoResponseDTO> obtenerPagina(int limite, String after) {
+        Paginas.Cursor cursor = Paginas.leerCursor(after, "productos");
+        List<Long> ids = catalogoCache.idsPagina(limite, cursor.id(),
+                () -> repo.findIdsByIdGreaterThan(cursor.id(), Limit.of(limite + 1)));
+        return Paginas.construirDesdeIds(ids, limite, "productos",
+                pagina -> catalogoCache.productos(pagina, this::cargarCatalogo));
+    }
+
+    /**
+     * Productos que cumplen todos los filtros, paginados por ID, con el recuento por
+     * categoría y por tramo de precio en la primera página. El nombre se resuelve
+     * con el índice de búsqueda y llega a la consulta como lista de IDs. Los
+     * recuentos recorren todos los productos que casan con el filtro, así que se
+     * guardan en CatalogoCache por filtro.
+     */
+    @Transactional(readOnly = true)
+    public ProductosFiltradosDTO filtrar(Long categoriaId, BigDecimal precioMin, BigDecimal precioMax,
+            boolean enStock, String nombre, int limite, String after) {
+        if (precioMin != null && precioMax != null && precioMin.compareTo(precioMax) > 0) {
+            throw new IllegalArgumentException("precioMin no puede ser mayor que precioMax");
+        }
+        Paginas.Cursor cursor = Paginas.leerCursor(after, "productos");
+        List<Long> porNombre = nombre == null || nombre.isBlank()
+                ? null
+                : indiceProductos.coincidencias(nombre, maxCoincidenciasNombre);
+        FiltroProductos filtro = new FiltroProductos(categoriaId, precioMin, precioMax, enStock, porNombre);
+        boolean sinResultados = porNombre != null && porNombre.isEmpty();
+
+        List<Long> ids = sinResultados ? List.of() : repo.findIdsFiltrados(filtro, cursor.id(), limite + 1);
+        PaginaDTO<ProductoResponseDTO> pagina = Paginas.construirDesdeIds(ids, limite, "productos",
+                idsPagina -> catalogoCache.productos(idsPagina, this::cargarCatalogo));
+
+        ProductosFiltradosDTO dto = new ProductosFiltradosDTO();
+        dto.setContenido(pagina.getContenido());
+        dto.setLimite(pagina.getLimite());
+        dto.setSiguienteCursor(pagina.getSiguienteCursor());
+        if (after == null || after.isBlank()) {
+            List<BigDecimal> limites = limitesPrecio();
+            String claveNombre = porNombre == null ? null : nombre.trim();
+            dto.setCategorias(sinResultados ? List.of() : catalogoCache.facetaCategorias(
+                    new ClaveFacetaCategorias(normalizar(precioMin), normalizar(precioMax), enStock, claveNombre),
+                    () -> facetaCategorias(repo.contarPorCategoria(filtro))));
+            dto.setPrecios(sinResultados ? facetaPrecios(limites, new long[limites.size() + 1])
+                    : catalogoCache.facetaPrecios(new ClaveFacetaPrecios(categoriaId, enStock, claveNombre, limites),
+                            () -> facetaPrecios(limites, repo.contarPorTramoPrecio(filtro, limites))));
+        }
+        return dto;
+    }
+
+    // Búsqueda por palabras en el índice en memoria; los productos salen de la caché
+    @Transactional(readOnly = true)
+    public List<ProductoResponseDTO> buscar(String texto, int limite) {
+        return catalogoCache.productos(indiceProductos.buscar(texto, limite), this::cargarCatalogo);
+    }
+
+    // Cada faceta ignora su propia condición, así que no entra en su clave
+    private record ClaveFacetaCategorias(BigDecimal precioMin, BigDecimal precioMax, boolean enStock, String nombre) {
+    }
+
+    private record ClaveFacetaPrecios(Long categoriaId, boolean enStock, String nombre, List<BigDecimal> limites) {
+    }
+
+    // 10, 10.0 y 10.00 son el mismo filtro
+    private static BigDecimal normalizar(BigDecimal precio) {
+        return precio == null ? null : precio.stripTrailingZeros();
+    }
+
+    // fila: [categoriaId, número de productos]; de más a menos productos
+    private List<FacetaCategoriaDTO> facetaCategorias(List<Object[]> filas) {
+        Map<Long, String> nombres = categoriaRepository.findAllById(filas.stream()
+                        .map(fila -> (Long) fila[0])
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(Categoria::getId, Categoria::getNombre));
+
+        return filas.stream()
+                .map(fila -> {
+                    FacetaCategoriaDTO faceta = new FacetaCategoriaDTO();
+                    faceta.setId((Long) fila[0]);
+                    faceta.setNombre(nombres.get((Long) fila[0]));
+                    faceta.setNumeroProductos(((Number) fila[1]).longValue());
+                    return faceta;
+                })
+                .sorted(Comparator.comparing(FacetaCategoriaDTO::getNumeroProductos).reversed())
+                .collect(Collectors.toList());
+    }
+
+    private List<FacetaPrecioDTO> facetaPrecios(List<BigDecimal> limites, long[] recuentos) {
+        List<FacetaPrecioDTO> tramos = new ArrayList<>();
+        for (int i = 0; i < recuentos.length; i++) {
+            FacetaPrecioDTO tramo = new FacetaPrecioDTO();
+            tramo.setDesde(i > 0 ? limites.get(i - 1) : BigDecimal.ZERO);
+            tramo.setHasta(i < limites.size() ? limites.get(i) : null);
+            tramo.setNumeroProductos(recuentos[i]);
+            tramos.add(tramo);
+        }
+        return tramos;
+    }
+
+    private List<BigDecimal> limitesPrecio() {
+        return Arrays.stream(tramosPrecio.split(","))
+                .map(String::trim)
+                .filter(limite -> !limite.isEmpty())
+                .map(BigDecimal::new)
+                .sorted()
+                .collect(Collectors.toList());
+    }
 
-        return productos.stream()
-            .map(this::toResponseDTO)
-            .collect(Collectors.toList());
+    private List<ProductoResponseDTO> cargarCatalogo(List<Long> ids) {
+        return repo.findCatalogoByIdIn(ids).stream()
+                .map(this::toResponseDTO)
+                .collect(Collectors.toList());
     }
     
+    // Con ?fields=: sólo se leen las columnas de los campos pedidos
+    @Transactional(readOnly = true)
+    public PaginaDTO<Map<String, Object>> obtenerPaginaCampos(int limite, String after, String fields) {
+        Set<String> campos = Campos.leer(fields, ProductoRepositoryCustom.CAMPOS);
+        Paginas.Cursor cursor = Paginas.leerCursor(after, "productos");
+        List<Map<String, Object>> productos = repo.findCampos(campos, cursor.id(), limite + 1);
+        return Paginas.construir(productos, limite, "productos", fila -> (Long) fila.get("id"), Function.identity());
+    }
+
+    @Transactional(readOnly = true)
     public ProductoResponseDTO obtenerPorId(Long id) {
-        Producto producto = repo.findById(id)
+        return catalogoCache.producto(id, () -> toResponseDTO(repo.findCatalogoById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Producto no encontrado"))));
+    }
+
+    @Transactional(readOnly = true)
+    public Long obtenerVersion(Long id) {
+        ProductoResponseDTO enCache = catalogoCache.producto(id);
+        if (enCache != null) {
+            return enCache.getVersion();
+        }
+        return repo.findVersionById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Producto no encontrado"));
-        return toResponseDTO(producto);
     }
 
-    public ProductoResponseDTO actualizarProducto(Long id, ProductoRequestDTO request) {
+    // versionEsperada viene de If-Match; null si la petición no la trae
+    public ProductoResponseDTO actualizarProducto(Long id, ProductoRequestDTO request, Long versionEsperada) {
         Producto producto = repo.findById(id)
             .orElseThrow(() -> new ResourceNotFoundException("No se encuentra producto con ID: " + id));
+        boolean cambiaTexto = !Objects.equals(producto.getNombre(), request.getNombre())
+                || !Objects.equals(producto.getDescripcion(), request.getDescripcion());
+        if (versionEsperada != null && !versionEsperada.equals(producto.getVersion())) {
+            throw new PreconditionFailedException(String.format(
+                    "El producto %d ha cambiado: versión actual %d, If-Match %d", id, producto.getVersion(), versionEsperada));
+        }
 
         // actualizar categoria si cambió
-        if (!producto.getCategoria().getId().equals(request.getCategoriaId())){
+        Long categoriaAnterior = producto.getCategoria().getId();
+        Integer stockAnterior = producto.getStock();
+        if (!categoriaAnterior.equals(request.getCategoriaId())){
             Categoria categoria = categoriaRepository.findById(request.getCategoriaId())
                 .orElseThrow(() -> new ResourceNotFoundException("No se encuentra categoría con ID: " + request.getCategoriaId()));
             producto.setCategoria(categoria);
+            resumenCategoriaService.productoQuitado(categoriaAnterior, stockAnterior);
+            resumenCategoriaService.productoAnadido(categoria.getId(), request.getStock());
+        } else {
+            if (producto.getPrecio().compareTo(request.getPrecio()) != 0) {
+                resumenCategoriaService.precioCambiado(categoriaAnterior);
+            }
+            resumenCategoriaService.stockCambiado(categoriaAnterior,
+                    request.getStock() - Objects.requireNonNullElse(stockAnterior, 0));
         }
         producto.setNombre(request.getNombre());
         producto.setDescripcion(request.getDescripcion());
         producto.setPrecio(request.getPrecio());
         producto.setStock(request.getStock());
 
-        Producto actualizado = repo.save(producto);
+        // flush para que la respuesta lleve ya la versión nueva (y falle aquí si otro la cambió)
+        Producto actualizado = repo.saveAndFlush(producto);
+        flashSaleService.ajustarTrasCommit(actualizado.getId(),
+                Objects.requireNonNullElse(stockAnterior, 0), actualizado.getStock());
+        if (cambiaTexto) {
+            catalogoCache.productosEditados(List.of(id));
+        } else {
+            catalogoCache.productosCambiados(List.of(id));
+        }
         log.info("Producto actualizado con ID: {}", actualizado.getId());
 
         return toResponseDTO(actualizado);
     }
 
     public void eliminarProducto(Long id) {
-        if (!repo.existsById(id)) {
-            throw new ResourceNotFoundException("No se encuentra producto con ID: " + id);
+        Producto producto = repo.findById(id)
+            .orElseThrow(() -> new ResourceNotFoundException("No se encuentra producto con ID: " + id));
+        if (producto.getCategoria() != null) {
+            resumenCategoriaService.productoQuitado(producto.getCategoria().getId(), producto.getStock());
         }
-        repo.deleteById(id);
+        repo.delete(producto);
+        catalogoCache.productosAnadidosOBorrados(List.of(id));
         log.info("Producto eliminado con ID: {}", id);
     }
 
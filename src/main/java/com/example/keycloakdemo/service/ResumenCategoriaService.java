@@ -0,0 +1,225 @@
+package com.example.keycloakdemo.service;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.keycloakdemo.dto.PaginaDTO;
+import com.example.keycloakdemo.dto.ReconstruccionResumenesDTO;
+import com.example.keycloakdemo.dto.ResumenCategoriaDTO;
+import com.example.keycloakdemo.exception.ResourceNotFoundException;
+import com.example.keycloakdemo.model.ResumenCategoria;
+import com.example.keycloakdemo.repository.CategoriaRepository;
+import com.example.keycloakdemo.repository.ProductoRepository;
+import com.example.keycloakdemo.repository.ResumenCategoriaRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Mantenimiento incremental de categoria_resumen.
+ *
+ * Los cambios de cada transacción se acumulan por categoría y se aplican justo
+ * antes del commit, con un UPDATE por categoría y en orden de ID: la fila del
+ * resumen, compartida por todos los pedidos de la categoría, sólo queda bloqueada
+ * durante el commit. Número de productos y stock se suman como deltas; el precio
+ * mínimo y máximo se recalculan sobre el índice (categoria_id, precio) cuando
+ * un producto entra, sale o cambia de precio.
+ */
+@Service
+@RequiredArgsConstructor
+@Transactional
+@Slf4j
+public class ResumenCategoriaService {
+
+    private final ResumenCategoriaRepository resumenRepository;
+    private final CategoriaRepository categoriaRepository;
+    private final ProductoRepository productoRepository;
+
+    // Cambios pendientes de una categoría en la transacción en curso
+    private static final class Cambios {
+        long productos;
+        long stock;
+        boolean precios;
+    }
+
+    // La primera vez (tabla vacía) se calcula todo desde producto
+    @EventListener(ApplicationReadyEvent.class)
+    public void inicializar() {
+        if (resumenRepository.count() == 0 && categoriaRepository.count() > 0) {
+            ReconstruccionResumenesDTO resultado = reconstruir();
+            log.info("Resúmenes de categoría calculados para {} categorías", resultado.getCategorias());
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public ResumenCategoriaDTO obtener(Long categoriaId) {
+        return resumenRepository.findById(categoriaId)
+                .map(this::toDTO)
+                .orElseGet(() -> {
+                    if (!categoriaRepository.existsById(categoriaId)) {
+                        throw new ResourceNotFoundException("No se encuentra categoría con ID: " + categoriaId);
+                    }
+                    return toDTO(new ResumenCategoria(categoriaId, 0L, null, null, 0L));
+                });
+    }
+
+    @Transactional(readOnly = true)
+    public PaginaDTO<ResumenCategoriaDTO> obtenerPagina(int limite, String after) {
+        Paginas.Cursor cursor = Paginas.leerCursor(after, "resumenes");
+        List<ResumenCategoria> resumenes = resumenRepository
+                .findByCategoriaIdGreaterThanOrderByCategoriaIdAsc(cursor.id(), Limit.of(limite + 1));
+        return Paginas.construir(resumenes, limite, "resumenes", ResumenCategoria::getCategoriaId, this::toDTO);
+    }
+
+    public void categoriaCreada(Long categoriaId) {
+        resumenRepository.save(new ResumenCategoria(categoriaId, 0L, null, null, 0L));
+    }
+
+    public void categoriaEliminada(Long categoriaId) {
+        pendientes().remove(categoriaId);
+        resumenRepository.deleteById(categoriaId);
+    }
+
+    public void productoAnadido(Long categoriaId, Integer stock) {
+        Cambios cambios = cambios(categoriaId);
+        cambios.productos++;
+        cambios.stock += stock != null ? stock : 0;
+        cambios.precios = true;
+    }
+
+    public void productoQuitado(Long categoriaId, Integer stock) {
+        Cambios cambios = cambios(categoriaId);
+        cambios.productos--;
+        cambios.stock -= stock != null ? stock : 0;
+        cambios.precios = true;
+    }
+
+    public void precioCambiado(Long categoriaId) {
+        cambios(categoriaId).precios = true;
+    }
+
+    public void stockCambiado(Long categoriaId, long delta) {
+        if (delta != 0) {
+            cambios(categoriaId).stock += delta;
+        }
+    }
+
+    // Para quien sólo tiene los IDs de producto (devoluciones, volcado flash): una consulta para sus categorías
+    public void stockCambiadoPorProducto(Map<Long, Integer> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        for (Object[] fila : productoRepository.findCategoriaIdsByIdIn(deltas.keySet())) {
+            if (fila[1] != null) {
+                stockCambiado((Long) fila[1], deltas.get((Long) fila[0]));
+            }
+        }
+    }
+
+    /**
+     * Recalcula todos los resúmenes desde producto y corrige los que se hayan
+     * desviado. Bloquea antes los resúmenes: una transacción que ya cambió stock
+     * pero aún no ha aplicado su delta lo aplicará sobre el valor recalculado.
+     */
+    public ReconstruccionResumenesDTO reconstruir() {
+        resumenRepository.borrarHuerfanos();
+        resumenRepository.insertarFaltantes();
+        List<ResumenCategoria> resumenes = resumenRepository.findAllParaActualizar();
+
+        Map<Long, ResumenCategoria> calculados = resumenRepository.calcularTodos().stream()
+                .collect(Collectors.toMap(fila -> (Long) fila[0],
+                        fila -> toResumen((Long) fila[0], fila[1], fila[2], fila[3], fila[4])));
+
+        int corregidas = 0;
+        for (ResumenCategoria resumen : resumenes) {
+            ResumenCategoria correcto = calculados.getOrDefault(resumen.getCategoriaId(),
+                    new ResumenCategoria(resumen.getCategoriaId(), 0L, null, null, 0L));
+            if (!correcto.equals(resumen)) {
+                log.warn("Resumen de categoría {} desviado: {} en lugar de {}", resumen.getCategoriaId(), resumen, correcto);
+                resumen.setNumeroProductos(correcto.getNumeroProductos());
+                resumen.setPrecioMinimo(correcto.getPrecioMinimo());
+                resumen.setPrecioMaximo(correcto.getPrecioMaximo());
+                resumen.setStockTotal(correcto.getStockTotal());
+                corregidas++;
+            }
+        }
+
+        ReconstruccionResumenesDTO resultado = new ReconstruccionResumenesDTO();
+        resultado.setCategorias(resumenes.size());
+        resultado.setCorregidas(corregidas);
+        log.info("Resúmenes de categoría reconstruidos: {} categorías, {} corregidas", resumenes.size(), corregidas);
+        return resultado;
+    }
+
+    private Cambios cambios(Long categoriaId) {
+        return pendientes().computeIfAbsent(categoriaId, id -> new Cambios());
+    }
+
+    // Un TreeMap por transacción, aplicado en beforeCommit y soltado al terminar
+    @SuppressWarnings("unchecked")
+    private Map<Long, Cambios> pendientes() {
+        Map<Long, Cambios> pendientes = (Map<Long, Cambios>) TransactionSynchronizationManager.getResource(this);
+        if (pendientes != null) {
+            return pendientes;
+        }
+        Map<Long, Cambios> nuevos = new TreeMap<>();
+        TransactionSynchronizationManager.bindResource(this, nuevos);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                aplicar(nuevos);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(ResumenCategoriaService.this);
+            }
+        });
+        return nuevos;
+    }
+
+    private void aplicar(Map<Long, Cambios> pendientes) {
+        pendientes.forEach((categoriaId, cambios) -> {
+            if (resumenRepository.sumar(categoriaId, cambios.productos, cambios.stock) == 0) {
+                // sin fila todavía: se calcula entera, ya con los cambios de esta transacción
+                crearDesdeProductos(categoriaId);
+            } else if (cambios.precios) {
+                resumenRepository.recalcularPrecios(categoriaId);
+            }
+        });
+    }
+
+    private void crearDesdeProductos(Long categoriaId) {
+        if (!categoriaRepository.existsById(categoriaId)) {
+            return;
+        }
+        Object[] fila = resumenRepository.calcular(categoriaId).get(0);
+        resumenRepository.save(toResumen(categoriaId, fila[0], fila[1], fila[2], fila[3]));
+    }
+
+    private ResumenCategoria toResumen(Long categoriaId, Object numero, Object minimo, Object maximo, Object stock) {
+        return new ResumenCategoria(categoriaId, ((Number) numero).longValue(),
+                (BigDecimal) minimo, (BigDecimal) maximo, ((Number) stock).longValue());
+    }
+
+    private ResumenCategoriaDTO toDTO(ResumenCategoria resumen) {
+        ResumenCategoriaDTO dto = new ResumenCategoriaDTO();
+        dto.setCategoriaId(resumen.getCategoriaId());
+        dto.setNumeroProductos(resumen.getNumeroProductos());
+        dto.setPrecioMinimo(resumen.getPrecioMinimo());
+        dto.setPrecioMaximo(resumen.getPrecioMaximo());
+        dto.setStockTotal(resumen.getStockTotal());
+        return dto;
+    }
+}
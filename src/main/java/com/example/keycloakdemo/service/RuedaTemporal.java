@@ -0,0 +1,96 @@
+package com.example.keycloakdemo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rueda temporal jerárquica para vencimientos de pedidos. Alta y avance por
+ * tick en O(1): cada nivel cubre tamano veces el intervalo del anterior y, al
+ * llegar su hueco, reparte las entradas hacia niveles más finos.
+ *
+ * No es thread-safe: quien la use debe sincronizar el acceso.
+ */
+class RuedaTemporal {
+
+    private record Entrada(Long pedidoId, long vencimiento) {
+    }
+
+    private final long tickMs;
+    private final int tamano;
+    private final long[] intervalos;
+    private final List<List<Entrada>[]> niveles = new ArrayList<>();
+    private final List<Long> vencidosPendientes = new ArrayList<>();
+
+    // tiempo actual de la rueda, en ticks
+    private long actual;
+
+    @SuppressWarnings("unchecked")
+    RuedaTemporal(long tickMs, int tamano, int numeroNiveles, long ahoraMs) {
+        this.tickMs = tickMs;
+        this.tamano = tamano;
+        this.intervalos = new long[numeroNiveles];
+        this.actual = ahoraMs / tickMs;
+
+        long intervalo = 1;
+        for (int i = 0; i < numeroNiveles; i++) {
+            intervalos[i] = intervalo;
+            List<Entrada>[] huecos = new List[tamano];
+            for (int h = 0; h < tamano; h++) {
+                huecos[h] = new ArrayList<>();
+            }
+            niveles.add(huecos);
+            intervalo *= tamano;
+        }
+    }
+
+    void anadir(Long pedidoId, long vencimientoMs) {
+        // se redondea hacia arriba: un pedido nunca vence antes de su hora
+        colocar(new Entrada(pedidoId, Math.ceilDiv(vencimientoMs, tickMs)));
+    }
+
+    /** Avanza hasta ahoraMs y devuelve los pedidos vencidos por el camino. */
+    List<Long> avanzar(long ahoraMs) {
+        long objetivo = ahoraMs / tickMs;
+        while (actual < objetivo) {
+            actual++;
+            // primero los niveles altos bajan sus entradas, después vence el hueco del nivel 0
+            for (int i = intervalos.length - 1; i > 0; i--) {
+                if (actual % intervalos[i] == 0) {
+                    List<Entrada> hueco = vaciar(i, actual / intervalos[i]);
+                    hueco.forEach(this::colocar);
+                }
+            }
+            vaciar(0, actual).forEach(entrada -> vencidosPendientes.add(entrada.pedidoId()));
+        }
+
+        List<Long> vencidos = new ArrayList<>(vencidosPendientes);
+        vencidosPendientes.clear();
+        return vencidos;
+    }
+
+    private void colocar(Entrada entrada) {
+        for (int i = 0; i < intervalos.length; i++) {
+            long distancia = entrada.vencimiento() / intervalos[i] - actual / intervalos[i];
+            if (i == 0 && distancia <= 0) {
+                vencidosPendientes.add(entrada.pedidoId());
+                return;
+            }
+            if (distancia < tamano) {
+                niveles.get(i)[(int) ((entrada.vencimiento() / intervalos[i]) % tamano)].add(entrada);
+                return;
+            }
+        }
+        // más allá del último nivel: se aparca en el hueco más lejano y se recoloca al llegar
+        int ultimo = intervalos.length - 1;
+        long hueco = actual / intervalos[ultimo] + tamano - 1;
+        niveles.get(ultimo)[(int) (hueco % tamano)].add(entrada);
+    }
+
+    private List<Entrada> vaciar(int nivel, long hueco) {
+        List<Entrada>[] huecos = niveles.get(nivel);
+        int indice = (int) (hueco % tamano);
+        List<Entrada> entradas = huecos[indice];
+        huecos[indice] = new ArrayList<>();
+        return entradas;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.keycloakdemo.service;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.keycloakdemo.model.CambioCatalogo;
+import com.example.keycloakdemo.model.NodoCatalogo;
+import com.example.keycloakdemo.repository.CambioCatalogoRepository;
+import com.example.keycloakdemo.repository.NodoCatalogoRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Invalidación de CatalogoCache entre instancias a través de la base de datos,
+ * sin broker: cada instancia lee los apuntes de cambio_catalogo posteriores a su
+ * marca de agua y aplica los de las demás.
+ *
+ * Un ID saltado puede ser de una transacción que aún no ha confirmado (o que se
+ * deshizo): se guarda como hueco y se vuelve a buscar durante la ventana
+ * configurada. La marca que se publica en nodo_catalogo queda por debajo del
+ * hueco más antiguo, así que la purga no borra nada que alguien pueda leer aún.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SincronizacionCatalogoService {
+
+    // Un salto mayor no es una transacción en curso (p.ej. la secuencia se reinició)
+    private static final int MAX_HUECO = 1000;
+
+    private final CatalogoCache catalogoCache;
+    private final CambioCatalogoRepository cambioCatalogoRepository;
+    private final NodoCatalogoRepository nodoCatalogoRepository;
+
+    @Value("${catalogo.sincronizacion.lote:1000}")
+    private int lote;
+
+    @Value("${catalogo.sincronizacion.ventana-huecos-segundos:60}")
+    private long ventanaHuecosSegundos;
+
+    @Value("${catalogo.sincronizacion.nodo-caducado-minutos:10}")
+    private long nodoCaducadoMinutos;
+
+    // -1 hasta registrar(); después sólo lo usa sondear(), que no se solapa consigo mismo
+    private volatile long ultimoLeido = -1;
+    private final TreeMap<Long, LocalDateTime> huecos = new TreeMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void registrar() {
+        if (!catalogoCache.isSincronizacionHabilitada()) {
+            return;
+        }
+        // la caché está vacía al arrancar: lo anterior no hace falta leerlo
+        ultimoLeido = cambioCatalogoRepository.findMaxId();
+        nodoCatalogoRepository.save(new NodoCatalogo(catalogoCache.getNodo(), ultimoLeido, LocalDateTime.now()));
+        log.info("Sincronización de caché del catálogo activa: nodo {} desde el cambio {}",
+                catalogoCache.getNodo(), ultimoLeido);
+    }
+
+    @Scheduled(fixedDelayString = "${catalogo.sincronizacion.intervalo-ms:1000}")
+    @Transactional
+    public void sondear() {
+        if (!catalogoCache.isSincronizacionHabilitada() || ultimoLeido < 0) {
+            return;
+        }
+        LocalDateTime ahora = LocalDateTime.now();
+
+        List<CambioCatalogo> nuevos = cambioCatalogoRepository.findByIdGreaterThanOrderByIdAsc(ultimoLeido, Limit.of(lote));
+        long esperado = ultimoLeido + 1;
+        for (CambioCatalogo cambio : nuevos) {
+            if (cambio.getId() - esperado <= MAX_HUECO) {
+                for (long id = esperado; id < cambio.getId(); id++) {
+                    huecos.put(id, ahora);
+                }
+            }
+            aplicar(cambio);
+            esperado = cambio.getId() + 1;
+        }
+        if (!nuevos.isEmpty()) {
+            ultimoLeido = nuevos.get(nuevos.size() - 1).getId();
+        }
+
+        if (!huecos.isEmpty()) {
+            for (CambioCatalogo tardio : cambioCatalogoRepository.findAllById(huecos.keySet())) {
+                aplicar(tardio);
+                huecos.remove(tardio.getId());
+            }
+            LocalDateTime caducan = ahora.minusSeconds(ventanaHuecosSegundos);
+            huecos.values().removeIf(fecha -> fecha.isBefore(caducan));
+        }
+
+        long marca = huecos.isEmpty() ? ultimoLeido : huecos.firstKey() - 1;
+        if (nodoCatalogoRepository.actualizar(catalogoCache.getNodo(), marca, ahora) == 0) {
+            // otra instancia nos dio por caídos y pudo purgar apuntes sin leer
+            log.warn("Nodo {} dado de baja en nodo_catalogo: se vacía la caché del catálogo", catalogoCache.getNodo());
+            catalogoCache.vaciar();
+            nodoCatalogoRepository.save(new NodoCatalogo(catalogoCache.getNodo(), marca, ahora));
+        }
+    }
+
+    /**
+     * Borra las instancias sin latido reciente y los apuntes que ya han leído
+     * todas las demás. Cualquier instancia puede hacerlo: la operación es idempotente.
+     */
+    @Scheduled(fixedDelayString = "${catalogo.sincronizacion.purga-ms:60000}")
+    @Transactional
+    public void purgar() {
+        if (!catalogoCache.isSincronizacionHabilitada()) {
+            return;
+        }
+        int caidos = nodoCatalogoRepository.borrarSinLatidoDesde(LocalDateTime.now().minusMinutes(nodoCaducadoMinutos));
+        if (caidos > 0) {
+            log.info("Dados de baja {} nodos sin latido en nodo_catalogo", caidos);
+        }
+        nodoCatalogoRepository.findMarcaMinima().ifPresent(marca -> {
+            int borrados = cambioCatalogoRepository.borrarHasta(marca);
+            if (borrados > 0) {
+                log.debug("Purgados {} apuntes de cambio_catalogo hasta el {}", borrados, marca);
+            }
+        });
+    }
+
+    private void aplicar(CambioCatalogo cambio) {
+        // los cambios propios ya se aplicaron tras el commit
+        if (cambio.getNodo().equals(catalogoCache.getNodo())) {
+            return;
+        }
+        catalogoCache.aplicar(cambio.getTipo(), Arrays.stream(cambio.getIds().split(","))
+                .map(Long::valueOf)
+                .toList());
+    }
+}
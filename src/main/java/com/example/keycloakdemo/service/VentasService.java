@@ -0,0 +1,381 @@
+package com.example.keycloakdemo.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.keycloakdemo.dto.ReconstruccionVentasDTO;
+import com.example.keycloakdemo.dto.VentaDiaDTO;
+import com.example.keycloakdemo.model.EstadoPedido;
+import com.example.keycloakdemo.model.Pedido;
+import com.example.keycloakdemo.model.PedidoItem;
+import com.example.keycloakdemo.model.VentaCategoriaDia;
+import com.example.keycloakdemo.model.VentaDelta;
+import com.example.keycloakdemo.model.VentaProductoDia;
+import com.example.keycloakdemo.repository.PedidoArchivadoRepository;
+import com.example.keycloakdemo.repository.PedidoRepository;
+import com.example.keycloakdemo.repository.VentaCategoriaDiaRepository;
+import com.example.keycloakdemo.repository.VentaDeltaRepository;
+import com.example.keycloakdemo.repository.VentaProductoDiaRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Resúmenes diarios de ventas por producto y por categoría (GET /api/reportes/ventas).
+ *
+ * Crear o cancelar un pedido sólo inserta apuntes en venta_delta dentro de su
+ * transacción: ningún pedido espera por la fila del día de un producto popular.
+ * Una compactación periódica suma los apuntes a venta_producto_dia y
+ * venta_categoria_dia y los borra; las lecturas suman resumen y apuntes pendientes.
+ * Las ventas se imputan al día del pedido, también cuando se cancela después.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VentasService {
+
+    private static final Set<EstadoPedido> VENDIDOS = EnumSet.complementOf(EnumSet.of(EstadoPedido.CANCELADO));
+    private static final int REINTENTOS_DIA = 5;
+
+    private final VentaDeltaRepository ventaDeltaRepository;
+    private final VentaProductoDiaRepository ventaProductoDiaRepository;
+    private final VentaCategoriaDiaRepository ventaCategoriaDiaRepository;
+    private final PedidoRepository pedidoRepository;
+    private final PedidoArchivadoRepository pedidoArchivadoRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${reportes.ventas.lote-compactacion:5000}")
+    private int loteCompactacion;
+
+    @Value("${reportes.ventas.max-dias:366}")
+    private long maxDias;
+
+    @Value("${reportes.ventas.pausa-reconstruccion-ms:100}")
+    private long pausaReconstruccionMs;
+
+    private final AtomicReference<ReconstruccionVentasDTO> reconstruccion = new AtomicReference<>();
+
+    public enum Agrupacion {
+        PRODUCTO, CATEGORIA
+    }
+
+    // Una línea de pedido ya agrupada por producto; pedido sólo sirve para no contar dos veces el mismo
+    private record Linea(Long pedido, LocalDate dia, Long productoId, Long categoriaId, BigDecimal ingresos, long unidades) {
+    }
+
+    private record Par(Long pedido, Long id) {
+    }
+
+    private record ClaveApunte(LocalDate dia, Long productoId, Long categoriaId) {
+    }
+
+    private record DiaId(LocalDate dia, Long id) {
+        static final Comparator<DiaId> ORDEN = Comparator.comparing(DiaId::dia).thenComparing(DiaId::id);
+    }
+
+    private static final class Suma {
+        BigDecimal ingresos = BigDecimal.ZERO;
+        long unidades;
+        long pedidos;
+
+        void sumar(Object ingresos, Object unidades, Object pedidos) {
+            this.ingresos = this.ingresos.add((BigDecimal) ingresos);
+            this.unidades += ((Number) unidades).longValue();
+            this.pedidos += ((Number) pedidos).longValue();
+        }
+    }
+
+    // Desde PedidoService, en la transacción que guarda los pedidos (ya con ID)
+    public void pedidosCreados(Collection<Pedido> pedidos) {
+        List<Linea> lineas = new ArrayList<>();
+        for (Pedido pedido : pedidos) {
+            for (PedidoItem item : pedido.getItems()) {
+                lineas.add(new Linea(pedido.getId(), pedido.getFechaPedido().toLocalDate(),
+                        item.getProducto().getId(),
+                        item.getProducto().getCategoria() != null ? item.getProducto().getCategoria().getId() : null,
+                        item.getSubtotal(), item.getCantidad()));
+            }
+        }
+        registrar(lineas, 1);
+    }
+
+    // Desde PedidoService, en la transacción que los pasa a CANCELADO
+    public void pedidosCancelados(Collection<Long> pedidoIds) {
+        // fila: [pedidoId, fechaPedido, productoId, categoriaId, ingresos, unidades]
+        registrar(pedidoRepository.findLineasVentaByIdIn(pedidoIds).stream()
+                .map(fila -> new Linea((Long) fila[0], ((LocalDateTime) fila[1]).toLocalDate(), (Long) fila[2],
+                        (Long) fila[3], (BigDecimal) fila[4], ((Number) fila[5]).longValue()))
+                .collect(Collectors.toList()), -1);
+    }
+
+    /**
+     * Suma un lote de apuntes a los resúmenes y los borra, en una transacción.
+     * Los apuntes se leen bloqueados, como las reservas del volcado de venta flash.
+     */
+    @Scheduled(fixedDelayString = "${reportes.ventas.intervalo-compactacion-ms:5000}")
+    @Transactional
+    public void compactar() {
+        List<VentaDelta> deltas = ventaDeltaRepository.findAllByOrderByIdAsc(Limit.of(loteCompactacion));
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        // en orden de (día, id) para que las filas de resumen se bloqueen siempre en el mismo orden
+        Map<DiaId, Suma> porProducto = new TreeMap<>(DiaId.ORDEN);
+        Map<DiaId, Suma> porCategoria = new TreeMap<>(DiaId.ORDEN);
+        for (VentaDelta delta : deltas) {
+            porProducto.computeIfAbsent(new DiaId(delta.getDia(), delta.getProductoId()), k -> new Suma())
+                    .sumar(delta.getIngresos(), delta.getUnidades(), delta.getPedidos());
+            if (delta.getCategoriaId() != null) {
+                porCategoria.computeIfAbsent(new DiaId(delta.getDia(), delta.getCategoriaId()), k -> new Suma())
+                        .sumar(delta.getIngresos(), delta.getUnidades(), delta.getPedidosCategoria());
+            }
+        }
+
+        porProducto.forEach((clave, suma) -> {
+            if (ventaProductoDiaRepository.sumar(clave.dia(), clave.id(), suma.ingresos, suma.unidades, suma.pedidos) == 0) {
+                ventaProductoDiaRepository.save(
+                        new VentaProductoDia(null, clave.dia(), clave.id(), suma.ingresos, suma.unidades, suma.pedidos));
+            }
+        });
+        porCategoria.forEach((clave, suma) -> {
+            if (ventaCategoriaDiaRepository.sumar(clave.dia(), clave.id(), suma.ingresos, suma.unidades, suma.pedidos) == 0) {
+                ventaCategoriaDiaRepository.save(
+                        new VentaCategoriaDia(null, clave.dia(), clave.id(), suma.ingresos, suma.unidades, suma.pedidos));
+            }
+        });
+
+        ventaDeltaRepository.deleteAllByIdInBatch(deltas.stream()
+                .map(VentaDelta::getId)
+                .collect(Collectors.toList()));
+
+        log.debug("Compactados {} apuntes de ventas en {} filas de producto y {} de categoría",
+                deltas.size(), porProducto.size(), porCategoria.size());
+    }
+
+    // Ventas por día de [desde, hasta], de un producto o categoría si se indica id.
+    // En REPEATABLE READ el resumen y los apuntes salen de la misma foto: si compactar
+    // confirma entre las dos lecturas, sus apuntes no se pierden ni se cuentan dos veces
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public List<VentaDiaDTO> obtenerVentas(Agrupacion agrupacion, LocalDate desde, LocalDate hasta, Long id) {
+        if (desde.isAfter(hasta)) {
+            throw new IllegalArgumentException("desde no puede ser posterior a hasta");
+        }
+        if (ChronoUnit.DAYS.between(desde, hasta) >= maxDias) {
+            throw new IllegalArgumentException("El rango no puede superar " + maxDias + " días");
+        }
+
+        Map<DiaId, Suma> filas = new TreeMap<>(DiaId.ORDEN);
+        List<Object[]> pendientes;
+        if (agrupacion == Agrupacion.PRODUCTO) {
+            List<VentaProductoDia> resumen = id != null
+                    ? ventaProductoDiaRepository.findByProductoIdAndDiaBetweenOrderByDiaAsc(id, desde, hasta)
+                    : ventaProductoDiaRepository.findByDiaBetweenOrderByDiaAscProductoIdAsc(desde, hasta);
+            resumen.forEach(v -> filas.computeIfAbsent(new DiaId(v.getDia(), v.getProductoId()), k -> new Suma())
+                    .sumar(v.getIngresos(), v.getUnidades(), v.getPedidos()));
+            pendientes = ventaDeltaRepository.sumarPorProducto(desde, hasta);
+        } else {
+            List<VentaCategoriaDia> resumen = id != null
+                    ? ventaCategoriaDiaRepository.findByCategoriaIdAndDiaBetweenOrderByDiaAsc(id, desde, hasta)
+                    : ventaCategoriaDiaRepository.findByDiaBetweenOrderByDiaAscCategoriaIdAsc(desde, hasta);
+            resumen.forEach(v -> filas.computeIfAbsent(new DiaId(v.getDia(), v.getCategoriaId()), k -> new Suma())
+                    .sumar(v.getIngresos(), v.getUnidades(), v.getPedidos()));
+            pendientes = ventaDeltaRepository.sumarPorCategoria(desde, hasta);
+        }
+
+        // fila: [dia, id, ingresos, unidades, pedidos]; la tabla de apuntes es pequeña, se filtra aquí
+        for (Object[] fila : pendientes) {
+            if (id == null || id.equals(fila[1])) {
+                filas.computeIfAbsent(new DiaId((LocalDate) fila[0], (Long) fila[1]), k -> new Suma())
+                        .sumar(fila[2], fila[3], fila[4]);
+            }
+        }
+
+        return filas.entrySet().stream()
+                .filter(e -> e.getValue().pedidos != 0 || e.getValue().unidades != 0)
+                .map(e -> toDTO(e.getKey(), e.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Lanza en segundo plano la reconstrucción de [desde, hasta] desde pedidos y
+     * pedidos_archivo, un día por transacción y con una pausa entre días.
+     */
+    public ReconstruccionVentasDTO reconstruir(LocalDate desde, LocalDate hasta) {
+        if (desde.isAfter(hasta)) {
+            throw new IllegalArgumentException("desde no puede ser posterior a hasta");
+        }
+        ReconstruccionVentasDTO actual = reconstruccion.get();
+        if (actual != null && actual.isEnCurso()) {
+            throw new IllegalStateException("Ya hay una reconstrucción de ventas en curso");
+        }
+        ReconstruccionVentasDTO estado = new ReconstruccionVentasDTO();
+        estado.setDesde(desde);
+        estado.setHasta(hasta);
+        estado.setEnCurso(true);
+        estado.setFechaInicio(LocalDateTime.now());
+        if (!reconstruccion.compareAndSet(actual, estado)) {
+            throw new IllegalStateException("Ya hay una reconstrucción de ventas en curso");
+        }
+
+        Thread.ofVirtual().name("reconstruccion-ventas").start(() -> ejecutarReconstruccion(estado));
+        log.info("Reconstrucción de ventas lanzada para {} - {}", desde, hasta);
+        return estado;
+    }
+
+    public ReconstruccionVentasDTO obtenerReconstruccion() {
+        return reconstruccion.get();
+    }
+
+    private void ejecutarReconstruccion(ReconstruccionVentasDTO inicial) {
+        // Cada día en REPEATABLE READ: los pedidos, los apuntes y el resumen que borra se ven
+        // en la misma instantánea, así un pedido confirmado a la vez no se pierde ni se cuenta dos veces
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        transaccion.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+
+        ReconstruccionVentasDTO estado = inicial;
+        try {
+            for (LocalDate dia = inicial.getDesde(); !dia.isAfter(inicial.getHasta()); dia = dia.plusDays(1)) {
+                LocalDate actual = dia;
+                for (int intento = 1; ; intento++) {
+                    try {
+                        transaccion.executeWithoutResult(status -> reconstruirDia(actual));
+                        break;
+                    } catch (ConcurrencyFailureException | DataIntegrityViolationException e) {
+                        // una compactación tocó el mismo día a la vez
+                        if (intento == REINTENTOS_DIA) {
+                            throw e;
+                        }
+                        log.debug("Reconstrucción de ventas del {} en conflicto, reintento {}", actual, intento);
+                    }
+                }
+                estado = progreso(estado, dia, false, null);
+                Thread.sleep(pausaReconstruccionMs);
+            }
+            estado = progreso(estado, estado.getUltimoDia(), true, null);
+            log.info("Reconstrucción de ventas terminada: {} días", estado.getDiasProcesados());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progreso(estado, estado.getUltimoDia(), true, "Interrumpida");
+        } catch (RuntimeException e) {
+            log.error("Reconstrucción de ventas fallida tras {}: {}", estado.getUltimoDia(), e.getMessage(), e);
+            progreso(estado, estado.getUltimoDia(), true, e.getMessage());
+        }
+    }
+
+    private void reconstruirDia(LocalDate dia) {
+        ventaDeltaRepository.deleteAllByIdInBatch(ventaDeltaRepository.findIdsByDia(dia));
+        ventaProductoDiaRepository.borrarDia(dia);
+        ventaCategoriaDiaRepository.borrarDia(dia);
+
+        LocalDateTime inicio = dia.atStartOfDay();
+        LocalDateTime fin = dia.plusDays(1).atStartOfDay();
+
+        // fila: [id, ingresos, unidades, pedidos]; un pedido está en pedidos o en pedidos_archivo, no en las dos
+        Map<Long, Suma> porProducto = new LinkedHashMap<>();
+        sumarFilas(porProducto, pedidoRepository.sumarVentasPorProducto(VENDIDOS, inicio, fin));
+        sumarFilas(porProducto, pedidoArchivadoRepository.sumarVentasPorProducto(VENDIDOS, inicio, fin));
+        Map<Long, Suma> porCategoria = new LinkedHashMap<>();
+        sumarFilas(porCategoria, pedidoRepository.sumarVentasPorCategoria(VENDIDOS, inicio, fin));
+        sumarFilas(porCategoria, pedidoArchivadoRepository.sumarVentasPorCategoria(VENDIDOS, inicio, fin));
+
+        ventaProductoDiaRepository.saveAll(porProducto.entrySet().stream()
+                .map(e -> new VentaProductoDia(null, dia, e.getKey(), e.getValue().ingresos, e.getValue().unidades,
+                        e.getValue().pedidos))
+                .collect(Collectors.toList()));
+        ventaCategoriaDiaRepository.saveAll(porCategoria.entrySet().stream()
+                .map(e -> new VentaCategoriaDia(null, dia, e.getKey(), e.getValue().ingresos, e.getValue().unidades,
+                        e.getValue().pedidos))
+                .collect(Collectors.toList()));
+    }
+
+    private void sumarFilas(Map<Long, Suma> destino, List<Object[]> filas) {
+        for (Object[] fila : filas) {
+            destino.computeIfAbsent((Long) fila[0], k -> new Suma()).sumar(fila[1], fila[2], fila[3]);
+        }
+    }
+
+    /**
+     * Un apunte por (día, producto, categoría) con las líneas de todos los pedidos.
+     * Cada pedido suma uno al recuento de cada producto y de cada categoría que lleva.
+     */
+    private void registrar(List<Linea> lineas, int signo) {
+        if (lineas.isEmpty()) {
+            return;
+        }
+        BigDecimal factor = BigDecimal.valueOf(signo);
+        Map<ClaveApunte, VentaDelta> apuntes = new LinkedHashMap<>();
+        Set<Par> productosContados = new HashSet<>();
+        Set<Par> categoriasContadas = new HashSet<>();
+
+        for (Linea linea : lineas) {
+            VentaDelta apunte = apuntes.computeIfAbsent(
+                    new ClaveApunte(linea.dia(), linea.productoId(), linea.categoriaId()),
+                    k -> new VentaDelta(null, linea.dia(), linea.productoId(), linea.categoriaId(),
+                            BigDecimal.ZERO, 0L, 0, 0));
+            apunte.setIngresos(apunte.getIngresos().add(linea.ingresos().multiply(factor)));
+            apunte.setUnidades(apunte.getUnidades() + signo * linea.unidades());
+            if (productosContados.add(new Par(linea.pedido(), linea.productoId()))) {
+                apunte.setPedidos(apunte.getPedidos() + signo);
+            }
+            if (linea.categoriaId() != null && categoriasContadas.add(new Par(linea.pedido(), linea.categoriaId()))) {
+                apunte.setPedidosCategoria(apunte.getPedidosCategoria() + signo);
+            }
+        }
+        ventaDeltaRepository.saveAll(apuntes.values());
+    }
+
+    // Cada avance publica un DTO nuevo: quien lo consulta nunca ve uno a medias
+    private ReconstruccionVentasDTO progreso(ReconstruccionVentasDTO anterior, LocalDate ultimoDia, boolean terminada,
+            String error) {
+        ReconstruccionVentasDTO nuevo = new ReconstruccionVentasDTO();
+        nuevo.setDesde(anterior.getDesde());
+        nuevo.setHasta(anterior.getHasta());
+        nuevo.setFechaInicio(anterior.getFechaInicio());
+        nuevo.setUltimoDia(ultimoDia);
+        nuevo.setDiasProcesados(ultimoDia != null ? (int) ChronoUnit.DAYS.between(anterior.getDesde(), ultimoDia) + 1 : 0);
+        nuevo.setEnCurso(!terminada);
+        nuevo.setError(error);
+        if (terminada) {
+            nuevo.setFechaFin(LocalDateTime.now());
+        }
+        reconstruccion.set(nuevo);
+        return nuevo;
+    }
+
+    private VentaDiaDTO toDTO(DiaId clave, Suma suma) {
+        VentaDiaDTO dto = new VentaDiaDTO();
+        dto.setDia(clave.dia());
+        dto.setId(clave.id());
+        dto.setIngresos(suma.ingresos);
+        dto.setUnidades(suma.unidades);
+        dto.setPedidos(suma.pedidos);
+        return dto;
+    }
+}
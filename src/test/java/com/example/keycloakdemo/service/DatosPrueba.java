@@ -0,0 +1,65 @@
+package com.example.keycloakdemo.service;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import com.example.keycloakdemo.dto.PedidoItemRequestDTO;
+import com.example.keycloakdemo.dto.PedidoRequestDTO;
+import com.example.keycloakdemo.model.Categoria;
+import com.example.keycloakdemo.model.Cliente;
+import com.example.keycloakdemo.model.Producto;
+
+/**
+ * Entidades y peticiones de prueba sin guardar. Email, keycloakUserId y nombre
+ * de categoría llevan un sufijo aleatorio porque son únicos y los tests de un
+ * mismo contexto comparten la base.
+ */
+final class DatosPrueba {
+
+    private DatosPrueba() {
+    }
+
+    static Cliente cliente() {
+        String sufijo = UUID.randomUUID().toString();
+        Cliente cliente = new Cliente();
+        cliente.setNombre("Cliente " + sufijo);
+        cliente.setEmail(sufijo + "@test.local");
+        cliente.setKeycloakUserId(sufijo);
+        return cliente;
+    }
+
+    static Categoria categoria() {
+        Categoria categoria = new Categoria();
+        categoria.setNombre("Categoría " + UUID.randomUUID());
+        return categoria;
+    }
+
+    static Producto producto(String nombre, int stock, Categoria categoria) {
+        Producto producto = new Producto();
+        producto.setNombre(nombre);
+        producto.setDescripcion("Descripción de " + nombre);
+        producto.setPrecio(new BigDecimal("9.99"));
+        producto.setStock(stock);
+        producto.setCategoria(categoria);
+        return producto;
+    }
+
+    static PedidoItemRequestDTO item(Long productoId, int cantidad) {
+        PedidoItemRequestDTO item = new PedidoItemRequestDTO();
+        item.setProductoId(productoId);
+        item.setCantidad(cantidad);
+        return item;
+    }
+
+    static PedidoRequestDTO pedido(Long clienteId, List<PedidoItemRequestDTO> items) {
+        PedidoRequestDTO pedido = new PedidoRequestDTO();
+        pedido.setClienteId(clienteId);
+        pedido.setItems(items);
+        return pedido;
+    }
+
+    static PedidoRequestDTO pedido(Long clienteId, Long productoId, int cantidad) {
+        return pedido(clienteId, List.of(item(productoId, cantidad)));
+    }
+}
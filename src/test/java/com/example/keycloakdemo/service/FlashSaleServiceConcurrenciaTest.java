@@ -0,0 +1,149 @@
+package com.example.keycloakdemo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.keycloakdemo.dto.ProductoRequestDTO;
+import com.example.keycloakdemo.exception.PreconditionFailedException;
+import com.example.keycloakdemo.exception.StockInsuficienteException;
+import com.example.keycloakdemo.model.Categoria;
+import com.example.keycloakdemo.model.Cliente;
+import com.example.keycloakdemo.model.Producto;
+import com.example.keycloakdemo.repository.CategoriaRepository;
+import com.example.keycloakdemo.repository.ClienteRepository;
+import com.example.keycloakdemo.repository.ProductoRepository;
+
+/**
+ * Pedidos de un producto en venta flash a la vez que se repone su stock a mano
+ * y se vuelcan las reservas: al terminar, el contador en memoria tiene que
+ * coincidir con el stock de la BD (ni por encima, que sería sobreventa, ni por debajo).
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class FlashSaleServiceConcurrenciaTest {
+
+    private static final int STOCK_INICIAL = 200;
+    private static final int REPOSICIONES = 5;
+    private static final int UNIDADES_POR_REPOSICION = 20;
+    private static final int PEDIDOS = 400;
+    private static final int HILOS = 8;
+
+    @Autowired
+    private FlashSaleService flashSaleService;
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private ProductoService productoService;
+
+    @Autowired
+    private ClienteRepository clienteRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Test
+    void reponerStockNoPisaLasReservas() throws Exception {
+        Cliente cliente = clienteRepository.save(DatosPrueba.cliente());
+        Categoria categoria = categoriaRepository.save(DatosPrueba.categoria());
+        Producto producto = productoRepository.save(DatosPrueba.producto("Producto flash", STOCK_INICIAL, categoria));
+        ReflectionTestUtils.setField(flashSaleService, "productosConfigurados", String.valueOf(producto.getId()));
+        flashSaleService.cargar();
+
+        ExecutorService executor = Executors.newFixedThreadPool(HILOS + 2);
+        CountDownLatch salida = new CountDownLatch(1);
+        AtomicBoolean pedidosTerminados = new AtomicBoolean();
+        try {
+            List<Future<Boolean>> pedidos = new ArrayList<>();
+            for (int i = 0; i < PEDIDOS; i++) {
+                pedidos.add(executor.submit(() -> {
+                    salida.await();
+                    try {
+                        pedidoService.crear(DatosPrueba.pedido(cliente.getId(), producto.getId(), 1));
+                        return true;
+                    } catch (StockInsuficienteException e) {
+                        return false;
+                    }
+                }));
+            }
+            Future<?> reposiciones = executor.submit(() -> {
+                salida.await();
+                for (int i = 0; i < REPOSICIONES; i++) {
+                    reponer(producto.getId(), categoria.getId());
+                }
+                return null;
+            });
+            Future<?> volcados = executor.submit(() -> {
+                salida.await();
+                while (!pedidosTerminados.get()) {
+                    flashSaleService.volcar();
+                    Thread.sleep(5);
+                }
+                return null;
+            });
+            salida.countDown();
+
+            int creados = 0;
+            for (Future<Boolean> pedido : pedidos) {
+                if (pedido.get(60, TimeUnit.SECONDS)) {
+                    creados++;
+                }
+            }
+            reposiciones.get(60, TimeUnit.SECONDS);
+            pedidosTerminados.set(true);
+            volcados.get(60, TimeUnit.SECONDS);
+
+            // lo que quede por volcar
+            flashSaleService.volcar();
+            long pendientes = productoRepository.findStockDisponible(producto.getId()).orElseThrow()
+                    - productoRepository.findById(producto.getId()).orElseThrow().getStock();
+            assertThat(pendientes).isZero();
+
+            int stockFinal = productoRepository.findById(producto.getId()).orElseThrow().getStock();
+            assertThat(stockFinal).isGreaterThanOrEqualTo(0);
+            assertThat(flashSaleService.getDisponible(producto.getId())).isEqualTo(stockFinal);
+            assertThat(creados).isEqualTo(STOCK_INICIAL + REPOSICIONES * UNIDADES_POR_REPOSICION - stockFinal);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Repone como lo haría un administrador: lee el stock y lo fija más alto; si el volcado
+    // ha cambiado la fila entre medias, la versión no coincide y se vuelve a intentar
+    private void reponer(Long productoId, Long categoriaId) {
+        while (true) {
+            Producto actual = productoRepository.findById(productoId).orElseThrow();
+            ProductoRequestDTO request = new ProductoRequestDTO();
+            request.setNombre(actual.getNombre());
+            request.setDescripcion(actual.getDescripcion());
+            request.setPrecio(actual.getPrecio());
+            request.setStock(actual.getStock() + UNIDADES_POR_REPOSICION);
+            request.setCategoriaId(categoriaId);
+            try {
+                productoService.actualizarProducto(productoId, request, actual.getVersion());
+                return;
+            } catch (OptimisticLockingFailureException | PreconditionFailedException e) {
+                // otro intento con la fila recién leída
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.keycloakdemo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.example.keycloakdemo.exception.StockInsuficienteException;
+import com.example.keycloakdemo.model.Cliente;
+import com.example.keycloakdemo.model.Producto;
+import com.example.keycloakdemo.repository.ClienteRepository;
+import com.example.keycloakdemo.repository.ProductoRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Muchos pedidos simultáneos del mismo producto: el descuento condicional de
+ * stock no puede dejarlo en negativo ni aceptar más pedidos de los que caben.
+ * El benchmark (mvn test -Pbenchmark) mide además los pedidos por segundo con
+ * todos los hilos compitiendo por la misma fila.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Slf4j
+class PedidoServiceConcurrenciaTest {
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private ClienteRepository clienteRepository;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    private record Resultado(int creados, int stockFinal, long nanos) {
+        double pedidosPorSegundo() {
+            return creados * 1e9 / nanos;
+        }
+    }
+
+    @Test
+    void crearConcurrenteNoDejaStockNegativo() throws Exception {
+        Resultado resultado = lanzarPedidos(10, 40, 16);
+
+        assertSinSobreventa(resultado, 10);
+        assertThat(resultado.creados()).isEqualTo(10);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void rendimientoConContencion() throws Exception {
+        // calentamiento: JIT, pool de conexiones y cachés de sentencias
+        lanzarPedidos(500, 500, 32);
+
+        for (int hilos : new int[] {1, 8, 32, 64}) {
+            Resultado resultado = lanzarPedidos(5000, 6000, hilos);
+            assertSinSobreventa(resultado, 5000);
+            log.info("Pedidos concurrentes sobre un producto: {} hilos, {} pedidos aceptados en {} ms = {} pedidos/s",
+                    hilos, resultado.creados(), resultado.nanos() / 1_000_000,
+                    String.format("%.0f", resultado.pedidosPorSegundo()));
+        }
+    }
+
+    private void assertSinSobreventa(Resultado resultado, int stockInicial) {
+        assertThat(resultado.stockFinal()).isGreaterThanOrEqualTo(0);
+        assertThat(resultado.creados()).isEqualTo(stockInicial - resultado.stockFinal());
+    }
+
+    // pedidos de una unidad lanzados a la vez desde hilos contra un producto nuevo con el stock indicado
+    private Resultado lanzarPedidos(int stock, int pedidos, int hilos) throws Exception {
+        Cliente cliente = clienteRepository.save(DatosPrueba.cliente());
+        Producto producto = productoRepository.save(DatosPrueba.producto("Producto concurrencia", stock, null));
+
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<Boolean>> resultados = new ArrayList<>();
+        try {
+            for (int i = 0; i < pedidos; i++) {
+                resultados.add(executor.submit(() -> {
+                    salida.await();
+                    try {
+                        pedidoService.crear(DatosPrueba.pedido(cliente.getId(), producto.getId(), 1));
+                        return true;
+                    } catch (StockInsuficienteException e) {
+                        return false;
+                    }
+                }));
+            }
+            long inicio = System.nanoTime();
+            salida.countDown();
+
+            // cualquier otra excepción (bloqueo, deadlock...) hace fallar el test en get()
+            int creados = 0;
+            for (Future<Boolean> resultado : resultados) {
+                if (resultado.get(120, TimeUnit.SECONDS)) {
+                    creados++;
+                }
+            }
+            long nanos = System.nanoTime() - inicio;
+
+            int stockFinal = productoRepository.findById(producto.getId()).orElseThrow().getStock();
+            return new Resultado(creados, stockFinal, nanos);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.keycloakdemo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.keycloakdemo.dto.PaginaDTO;
+import com.example.keycloakdemo.dto.PedidoItemRequestDTO;
+import com.example.keycloakdemo.dto.PedidoResponseDTO;
+import com.example.keycloakdemo.model.Cliente;
+import com.example.keycloakdemo.repository.ClienteRepository;
+import com.example.keycloakdemo.repository.PedidoArchivadoRepository;
+import com.example.keycloakdemo.repository.PedidoRepository;
+import com.example.keycloakdemo.repository.ProductoRepository;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Número de sentencias SQL de las lecturas de pedidos con 1.000 pedidos de
+ * varios items: tiene que ser el mismo que con uno (grafo Pedido.detalle). Con
+ * tan pocos pedidos que cupieran en un lote de default_batch_fetch_size, la
+ * carga por lotes daría las mismas cuentas que el grafo y el test no distinguiría.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PedidoServiceConsultasTest {
+
+    private static final int PEDIDOS = 1000;
+    private static final int ARCHIVADOS = 200;
+    private static final int ITEMS_POR_PEDIDO = 5;
+
+    // Su carga inicial lee pedidos en un hilo propio y se colaría en los contadores
+    @MockitoBean
+    private AnaliticaPedidosService analiticaPedidosService;
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private ClienteRepository clienteRepository;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Autowired
+    private PedidoArchivadoRepository pedidoArchivadoRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private Cliente cliente;
+    private List<Long> pedidoIds;
+
+    @BeforeAll
+    void crearPedidos() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        cliente = clienteRepository.save(DatosPrueba.cliente());
+        List<PedidoItemRequestDTO> items = new ArrayList<>();
+        for (int i = 0; i < ITEMS_POR_PEDIDO; i++) {
+            Long productoId = productoRepository.save(DatosPrueba.producto("Producto " + i, PEDIDOS, null)).getId();
+            items.add(DatosPrueba.item(productoId, 1));
+        }
+        pedidoIds = new ArrayList<>();
+        for (int i = 0; i < PEDIDOS; i++) {
+            pedidoIds.add(pedidoService.crear(DatosPrueba.pedido(cliente.getId(), items)).getId());
+        }
+
+        // los primeros se pasan al archivo igual que lo hace ArchivoPedidosService
+        List<Long> archivados = pedidoIds.subList(0, ARCHIVADOS);
+        transactionTemplate.executeWithoutResult(status -> {
+            pedidoArchivadoRepository.copiarPedidos(archivados);
+            pedidoArchivadoRepository.copiarItems(archivados);
+            pedidoRepository.borrarItemsDePedidos(archivados);
+            pedidoRepository.borrarPorIds(archivados);
+        });
+    }
+
+    @BeforeEach
+    void limpiarContadores() {
+        statistics.clear();
+    }
+
+    @Test
+    void detalleEnUnaConsulta() {
+        PedidoResponseDTO pedido = pedidoService.obtenerPorId(pedidoIds.get(PEDIDOS - 1));
+
+        assertCompleto(List.of(pedido));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void detalleArchivadoEnDosConsultas() {
+        // pedidos (no está) y pedidos_archivo
+        PedidoResponseDTO pedido = pedidoService.obtenerPorId(pedidoIds.get(0), true);
+
+        assertThat(pedido.getArchivado()).isTrue();
+        assertCompleto(List.of(pedido));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void paginaEnDosConsultas() {
+        // IDs con LIMIT y detalle de esos IDs
+        PaginaDTO<PedidoResponseDTO> pagina = pedidoService.listarPagina(PEDIDOS, null, false);
+
+        assertThat(pagina.getContenido()).hasSize(PEDIDOS - ARCHIVADOS);
+        assertCompleto(pagina.getContenido());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void paginaConArchivadosEnCuatroConsultas() {
+        // IDs y detalle en pedidos, y lo mismo en pedidos_archivo para completar la página
+        PaginaDTO<PedidoResponseDTO> pagina = pedidoService.listarPagina(PEDIDOS, null, true);
+
+        assertThat(pagina.getContenido()).hasSize(PEDIDOS);
+        assertCompleto(pagina.getContenido());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(4);
+    }
+
+    @Test
+    void pedidosDeClienteEnDosConsultas() {
+        // existsById del cliente y pedidos con items y productos
+        List<PedidoResponseDTO> pedidos = pedidoService.listarPorCliente(cliente.getId(), false);
+
+        assertThat(pedidos).extracting(PedidoResponseDTO::getId)
+                .containsExactlyElementsOf(pedidoIds.subList(ARCHIVADOS, PEDIDOS));
+        assertCompleto(pedidos);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void pedidosDeClienteConArchivadosEnTresConsultas() {
+        List<PedidoResponseDTO> pedidos = pedidoService.listarPorCliente(cliente.getId(), true);
+
+        assertThat(pedidos).hasSize(PEDIDOS);
+        assertCompleto(pedidos);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+    }
+
+    // Cliente, items y productos ya mapeados: si algo se cargara perezosamente, lo contaría Statistics
+    private void assertCompleto(List<PedidoResponseDTO> pedidos) {
+        assertThat(pedidos).allSatisfy(pedido -> {
+            assertThat(pedido.getCliente().getNombre()).isEqualTo(cliente.getNombre());
+            assertThat(pedido.getItems()).hasSize(ITEMS_POR_PEDIDO)
+                    .allSatisfy(item -> assertThat(item.getProducto().getNombre()).isNotNull());
+        });
+    }
+}
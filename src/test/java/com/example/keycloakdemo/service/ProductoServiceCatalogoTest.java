@@ -0,0 +1,211 @@
+package com.example.keycloakdemo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.keycloakdemo.dto.CategoriaResumenDTO;
+import com.example.keycloakdemo.dto.PaginaDTO;
+import com.example.keycloakdemo.dto.ProductoResponseDTO;
+import com.example.keycloakdemo.model.Categoria;
+import com.example.keycloakdemo.model.Producto;
+import com.example.keycloakdemo.repository.CategoriaRepository;
+import com.example.keycloakdemo.repository.ProductoCatalogo;
+import com.example.keycloakdemo.repository.ProductoRepository;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lecturas de catálogo con la proyección ProductoCatalogo: mismos datos que la
+ * entidad Producto con su categoría, en una consulta y sin cargar entidades.
+ * El benchmark (mvn test -Pbenchmark) compara la memoria reservada por página
+ * con la lectura anterior por entidades.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Slf4j
+class ProductoServiceCatalogoTest {
+
+    // Su carga inicial lee pedidos en un hilo propio y se colaría en los contadores
+    @MockitoBean
+    private AnaliticaPedidosService analiticaPedidosService;
+
+    @Autowired
+    private ProductoService productoService;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Statistics statistics;
+    private Producto conCategoria;
+    private Producto sinCategoria;
+
+    @BeforeEach
+    void crearProductos() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        Categoria categoria = categoriaRepository.save(DatosPrueba.categoria());
+        conCategoria = productoRepository.save(DatosPrueba.producto("Con categoría", 7, categoria));
+        sinCategoria = productoRepository.save(DatosPrueba.producto("Sin categoría", 7, null));
+
+        // las lecturas a medir deben ir a la BD
+        cacheManager.getCacheNames().forEach(nombre -> cacheManager.getCache(nombre).clear());
+        statistics.clear();
+    }
+
+    @Test
+    void obtenerPorIdIgualQueLaEntidad() {
+        ProductoResponseDTO dto = productoService.obtenerPorId(conCategoria.getId());
+
+        assertIgualQueEntidad(dto, conCategoria);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+
+        // la segunda lectura sale de la caché
+        assertThat(productoService.obtenerPorId(conCategoria.getId())).isEqualTo(dto);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void obtenerPorIdSinCategoria() {
+        ProductoResponseDTO dto = productoService.obtenerPorId(sinCategoria.getId());
+
+        assertIgualQueEntidad(dto, sinCategoria);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    void paginaIgualQueLasEntidades() {
+        // IDs con LIMIT y proyección de esos IDs
+        PaginaDTO<ProductoResponseDTO> pagina = productoService.obtenerPagina(100, null);
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+
+        List<ProductoResponseDTO> contenido = pagina.getContenido();
+        for (Producto producto : List.of(conCategoria, sinCategoria)) {
+            assertThat(contenido).filteredOn(dto -> dto.getId().equals(producto.getId()))
+                    .singleElement()
+                    .satisfies(dto -> assertIgualQueEntidad(dto, producto));
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void memoriaPorPaginaProyeccionFrenteAEntidades() {
+        int tamanoPagina = 100;
+        int repeticiones = 200;
+        Categoria categoria = categoriaRepository.save(DatosPrueba.categoria());
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < tamanoPagina; i++) {
+            ids.add(productoRepository.save(DatosPrueba.producto("Producto " + i, 10, categoria)).getId());
+        }
+
+        // Lectura anterior a la proyección: entidades Producto (y sus categorías por lotes) en una
+        // transacción de lectura-escritura, mapeadas igual que ProductoService.toResponseDTO(Producto)
+        Supplier<List<ProductoResponseDTO>> porEntidades = () -> transactionTemplate.execute(status ->
+                productoRepository.findAllById(ids).stream().map(this::toResponseDTO).toList());
+        TransactionTemplate soloLectura = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        soloLectura.setReadOnly(true);
+        Supplier<List<ProductoResponseDTO>> porProyeccion = () -> soloLectura.execute(status ->
+                productoRepository.findCatalogoByIdIn(ids).stream().map(this::toResponseDTO).toList());
+
+        long bytesEntidades = bytesPorLlamada(porEntidades, repeticiones);
+        long bytesProyeccion = bytesPorLlamada(porProyeccion, repeticiones);
+        log.info("Memoria reservada por página de {} productos: {} bytes con entidades, {} bytes con proyección ({}%)",
+                tamanoPagina, bytesEntidades, bytesProyeccion, bytesProyeccion * 100 / bytesEntidades);
+
+        assertThat(porProyeccion.get()).usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyInAnyOrderElementsOf(porEntidades.get());
+        assertThat(bytesProyeccion).isLessThan(bytesEntidades);
+    }
+
+    // Media de bytes reservados por el hilo actual en cada llamada, tras calentar el JIT
+    private static long bytesPorLlamada(Supplier<?> lectura, int repeticiones) {
+        com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long hilo = Thread.currentThread().threadId();
+        for (int i = 0; i < repeticiones; i++) {
+            lectura.get();
+        }
+        long antes = hilos.getThreadAllocatedBytes(hilo);
+        for (int i = 0; i < repeticiones; i++) {
+            lectura.get();
+        }
+        return (hilos.getThreadAllocatedBytes(hilo) - antes) / repeticiones;
+    }
+
+    private ProductoResponseDTO toResponseDTO(Producto producto) {
+        ProductoResponseDTO dto = new ProductoResponseDTO();
+        dto.setId(producto.getId());
+        dto.setNombre(producto.getNombre());
+        dto.setDescripcion(producto.getDescripcion());
+        dto.setPrecio(producto.getPrecio());
+        dto.setStock(producto.getStock());
+        if (producto.getCategoria() != null) {
+            CategoriaResumenDTO categoria = new CategoriaResumenDTO();
+            categoria.setId(producto.getCategoria().getId());
+            categoria.setNombre(producto.getCategoria().getNombre());
+            dto.setCategoria(categoria);
+        }
+        return dto;
+    }
+
+    private ProductoResponseDTO toResponseDTO(ProductoCatalogo producto) {
+        ProductoResponseDTO dto = new ProductoResponseDTO();
+        dto.setId(producto.id());
+        dto.setNombre(producto.nombre());
+        dto.setDescripcion(producto.descripcion());
+        dto.setPrecio(producto.precio());
+        dto.setStock(producto.stock());
+        if (producto.categoriaId() != null) {
+            CategoriaResumenDTO categoria = new CategoriaResumenDTO();
+            categoria.setId(producto.categoriaId());
+            categoria.setNombre(producto.categoriaNombre());
+            dto.setCategoria(categoria);
+        }
+        return dto;
+    }
+
+    private void assertIgualQueEntidad(ProductoResponseDTO dto, Producto producto) {
+        assertThat(dto.getId()).isEqualTo(producto.getId());
+        assertThat(dto.getNombre()).isEqualTo(producto.getNombre());
+        assertThat(dto.getDescripcion()).isEqualTo(producto.getDescripcion());
+        assertThat(dto.getPrecio()).isEqualByComparingTo(producto.getPrecio());
+        assertThat(dto.getStock()).isEqualTo(producto.getStock());
+        assertThat(dto.getVersion()).isEqualTo(producto.getVersion());
+        if (producto.getCategoria() == null) {
+            assertThat(dto.getCategoria()).isNull();
+        } else {
+            assertThat(dto.getCategoria().getId()).isEqualTo(producto.getCategoria().getId());
+            assertThat(dto.getCategoria().getNombre()).isEqualTo(producto.getCategoria().getNombre());
+        }
+    }
+}